@@ -0,0 +1,366 @@
+package stone;
+
+import stone.ast.ASTLeaf;
+import stone.ast.ASTList;
+import stone.ast.ASTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class AstCache {
+    public static final int MAGIC = 0x53544143;
+    public static final int VERSION = 1;
+    private static final int LIST = 0;
+    private static final int LEAF = 1;
+
+    private Path dir;
+    private BasicPaser parser;
+    private Charset charset = StandardCharsets.UTF_8;
+
+    public AstCache(BasicPaser parser){
+        this(Paths.get(System.getProperty("stone.cache",
+                Paths.get(System.getProperty("user.home"),".stone","cache").toString())),parser);
+    }
+
+    public AstCache(Path dir,BasicPaser parser){
+        this.dir = dir;
+        this.parser = parser;
+    }
+
+    public AstCache charset(Charset charset){
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Returns the statements of a script as an unmodifiable list that may be shared
+     * between threads, decoding them from the cache when the script, the grammar and
+     * the charset are unchanged.
+     */
+    public List<ASTree> load(Path script) throws IOException,ParseException{
+        byte[] bytes = Files.readAllBytes(script);
+        Path file = dir.resolve(key(bytes)+".ast");
+        if(Files.isRegularFile(file)){
+            try {
+                return read(file);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Lexer l = TokenBuffer.of(new String(bytes,charset)).lexer();
+        ArrayList<ASTree> trees = new ArrayList<>();
+        while (l.peek(0) != Token.EOF){
+            trees.add(parser.parse(l));
+        }
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir,"ast",".tmp");
+        try {
+            write(trees,tmp);
+            try {
+                Files.move(tmp,file,StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp,file,StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return Collections.unmodifiableList(trees);
+    }
+
+    public String key(byte[] source){
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(("stone-ast "+VERSION+" "+charset.name()+"\n").getBytes(StandardCharsets.UTF_8));
+            md.update(parser.fingerprint().getBytes(StandardCharsets.UTF_8));
+            md.update((byte)0);
+            byte[] d = md.digest(source);
+            StringBuilder sb = new StringBuilder(d.length*2);
+            for(byte b:d){
+                sb.append(Character.forDigit((b>>4)&0xf,16)).append(Character.forDigit(b&0xf,16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new StoneException("no SHA-256: "+e.getMessage());
+        }
+    }
+
+    public static void write(List<ASTree> trees,Path file) throws IOException{
+        Encoder body = new Encoder();
+        Encoder header = new Encoder();
+        HashMap<Class<?>,Integer> classes = new HashMap<>();
+        HashMap<String,Integer> strings = new HashMap<>();
+        ArrayList<Class<?>> classList = new ArrayList<>();
+        ArrayList<String> stringList = new ArrayList<>();
+        int[] lengths = new int[trees.size()];
+        for(int i = 0;i<lengths.length;i++){
+            int start = body.size();
+            encode(trees.get(i),body,classes,classList,strings,stringList);
+            lengths[i] = body.size()-start;
+        }
+        header.int32(MAGIC);
+        header.int32(VERSION);
+        header.varint(classList.size());
+        for(Class<?> c:classList){
+            header.write(ASTLeaf.class.isAssignableFrom(c) ? LEAF : LIST);
+            header.string(c.getName());
+        }
+        header.varint(stringList.size());
+        for(String s:stringList){
+            header.string(s);
+        }
+        header.varint(lengths.length);
+        for(int n:lengths){
+            header.varint(n);
+        }
+        try (FileChannel ch = FileChannel.open(file,StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer[] data = {header.buffer(),body.buffer()};
+            while (data[0].hasRemaining() || data[1].hasRemaining()){
+                ch.write(data);
+            }
+        }
+    }
+
+    private static void encode(ASTree t,Encoder out,HashMap<Class<?>,Integer> classes,List<Class<?>> classList,
+                               HashMap<String,Integer> strings,List<String> stringList){
+        Integer c = classes.get(t.getClass());
+        if(c == null){
+            if(!(t instanceof ASTLeaf) && !(t instanceof ASTList)){
+                throw new StoneException("cannot cache "+t.getClass().getName());
+            }
+            classes.put(t.getClass(),c = classList.size());
+            classList.add(t.getClass());
+        }
+        out.varint(c);
+        if(t instanceof ASTLeaf){
+            Token token = ((ASTLeaf)t).token();
+            out.varint(token.getLineNumber());
+            if(token.isNumber()){
+                out.write(Scanner.NUM);
+                out.varint(token.getNumber()<<1 ^ token.getNumber()>>31);
+            } else if(token.isIdF() || token.isString()){
+                out.write(token.isIdF() ? Scanner.ID : Scanner.STR);
+                String s = token.getText();
+                Integer n = strings.get(s);
+                if(n == null){
+                    strings.put(s,n = stringList.size());
+                    stringList.add(s);
+                }
+                out.varint(n);
+            } else {
+                throw new StoneException("cannot cache token "+token.getText(),t);
+            }
+        } else {
+            out.varint(t.numChildren());
+            for(int i = 0;i<t.numChildren();i++){
+                encode(t.child(i),out,classes,classList,strings,stringList);
+            }
+        }
+    }
+
+    public static List<ASTree> read(Path file) throws IOException{
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)){
+            buf = ch.map(FileChannel.MapMode.READ_ONLY,0,ch.size());
+        }
+        if(buf.remaining() < 8 || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION){
+            throw new IOException("not a stone AST cache: "+file);
+        }
+        try {
+            return new Trees(buf);
+        } catch (RuntimeException | StackOverflowError e) {
+            throw new IOException("corrupt AST cache: "+file,e);
+        }
+    }
+
+    /**
+     * Statements are decoded on first access. The whole body is checked once up front,
+     * so a damaged file fails in read() rather than in some later get().
+     */
+    protected static class Trees extends AbstractList<ASTree> implements RandomAccess{
+        private final ByteBuffer buf;
+        private final Parser.Factory[] factories;
+        private final boolean[] leaves;
+        private final String[] strings;
+        private final int[] offsets;
+        private final AtomicReferenceArray<ASTree> trees;
+
+        protected Trees(ByteBuffer buf){
+            this.buf = buf;
+            Cursor in = new Cursor(8);
+            int n = in.varint();
+            factories = new Parser.Factory[n];
+            leaves = new boolean[n];
+            for(int i = 0;i<n;i++){
+                leaves[i] = in.next() == LEAF;
+                String name = in.string();
+                Class<? extends ASTree> c;
+                try {
+                    c = Class.forName(name,false,AstCache.class.getClassLoader()).asSubclass(ASTree.class);
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    throw new StoneException("unknown AST class in cache: "+name);
+                }
+                if(leaves[i] != ASTLeaf.class.isAssignableFrom(c)){
+                    throw new StoneException("AST class changed kind: "+name);
+                }
+                factories[i] = leaves[i] ? Parser.Factory.get(c,Token.class) : Parser.Factory.getForASTList(c);
+            }
+            strings = new String[in.varint()];
+            for(int i = 0;i<strings.length;i++){
+                strings[i] = in.string();
+            }
+            offsets = new int[in.varint()+1];
+            for(int i = 1;i<offsets.length;i++){
+                offsets[i] = offsets[i-1]+in.varint();
+            }
+            for(int i = 0;i<offsets.length;i++){
+                offsets[i] += in.pos;
+            }
+            if(offsets[offsets.length-1] != buf.limit()){
+                throw new StoneException("truncated AST cache");
+            }
+            for(int i = 0;i+1<offsets.length;i++){
+                in.pos = offsets[i];
+                in.skip();
+                if(in.pos != offsets[i+1]) throw new StoneException("bad length of statement "+i);
+            }
+            trees = new AtomicReferenceArray<>(offsets.length-1);
+        }
+
+        @Override
+        public ASTree get(int index) {
+            ASTree t = trees.get(index);
+            if(t == null){
+                trees.compareAndSet(index,null,new Cursor(offsets[index]).decode());
+                t = trees.get(index);
+            }
+            return t;
+        }
+
+        @Override
+        public int size() {
+            return trees.length();
+        }
+
+        private class Cursor{
+            private int pos;
+
+            Cursor(int pos){
+                this.pos = pos;
+            }
+
+            ASTree decode(){
+                int c = varint();
+                if(leaves[c]){
+                    int line = varint();
+                    int kind = next();
+                    Token token;
+                    if(kind == Scanner.NUM){
+                        int v = varint();
+                        token = new Lexer.NumToken(line,v>>>1 ^ -(v&1));
+                    } else if(kind == Scanner.ID){
+                        token = new Lexer.IdToken(line,strings[varint()]);
+                    } else {
+                        token = new Lexer.StrToken(line,strings[varint()]);
+                    }
+                    return factories[c].make(token);
+                }
+                int n = varint();
+                ArrayList<ASTree> children = new ArrayList<>(n);
+                for(int i = 0;i<n;i++){
+                    children.add(decode());
+                }
+                return factories[c].make(children);
+            }
+
+            void skip(){
+                int c = varint();
+                if(c >= leaves.length) throw new StoneException("bad class index "+c);
+                if(leaves[c]){
+                    varint();
+                    int kind = next();
+                    int v = varint();
+                    if(kind != Scanner.NUM && (kind != Scanner.ID && kind != Scanner.STR || v >= strings.length)){
+                        throw new StoneException("bad token at "+pos);
+                    }
+                    return;
+                }
+                int n = varint();
+                if(n > buf.limit()-pos) throw new StoneException("bad child count at "+pos);
+                for(int i = 0;i<n;i++){
+                    skip();
+                }
+            }
+
+            int next(){
+                return buf.get(pos++);
+            }
+
+            int varint(){
+                int v = 0;
+                for(int shift = 0;shift < 35;shift += 7){
+                    byte b = buf.get(pos++);
+                    v |= (b&0x7f)<<shift;
+                    if(b >= 0) return v;
+                }
+                throw new StoneException("bad varint at "+pos);
+            }
+
+            String string(){
+                int n = varint();
+                if(n > buf.limit()-pos) throw new StoneException("bad string length at "+pos);
+                byte[] b = new byte[n];
+                for(int i = 0;i<n;i++){
+                    b[i] = buf.get(pos++);
+                }
+                return new String(b,StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static class Encoder extends ByteArrayOutputStream{
+        void varint(int v){
+            while ((v&~0x7f) != 0){
+                write((v&0x7f)|0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        void int32(int v){
+            write(v>>>24);
+            write(v>>>16);
+            write(v>>>8);
+            write(v);
+        }
+
+        void string(String s){
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            write(b,0,b.length);
+        }
+
+        ByteBuffer buffer(){
+            return ByteBuffer.wrap(buf,0,count);
+        }
+    }
+}
@@ -4,12 +4,12 @@ package stone;
 import stone.ast.*;
 
 
-import java.util.HashSet;
+import java.util.List;
 
 import static stone.Parser.rule;
 
 public class BasicPaser {
-    HashSet<String> reserved = new HashSet<>();
+    Parser.Reserved reserved = new Parser.Reserved();
     Parser.Operators operators = new Parser.Operators();
     Parser expr0 = rule();
     Parser primary = rule(PrimaryExpr.class)
@@ -35,6 +35,7 @@ public class BasicPaser {
 
     Parser program = rule().or(statement, rule(NullStmnt.class))
             .sep(";", Token.EOL);
+    List<String> conflicts;
 
      public BasicPaser(){
          reserved.add(";");
@@ -50,7 +51,24 @@ public class BasicPaser {
          operators.add("*", 4, Parser.Operators.LEFT);
          operators.add("/", 4, Parser.Operators.LEFT);
          operators.add("%", 4, Parser.Operators.LEFT);
+         conflicts = program.build();
      }
+
+    public List<String> conflicts() {
+        return conflicts;
+    }
+
+    public String fingerprint() {
+        return program.fingerprint();
+    }
+
+    public BasicPaser freeze() {
+        program.freeze();
+        reserved.freeze();
+        operators.freeze();
+        return this;
+    }
+
     public ASTree parse(Lexer lexer) throws ParseException {
         return program.parse(lexer);
     }
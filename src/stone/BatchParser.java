@@ -0,0 +1,115 @@
+package stone;
+
+import stone.ast.ASTree;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class BatchParser {
+    private BasicPaser parser;
+    private ForkJoinPool pool;
+    private Charset charset = StandardCharsets.UTF_8;
+
+    public static class Result{
+        private Path path;
+        private List<ASTree> trees;
+        private Throwable error;
+
+        protected Result(Path path,List<ASTree> trees,Throwable error){
+            this.path = path;
+            this.trees = trees;
+            this.error = error;
+        }
+
+        public Path path(){return path;}
+
+        public List<ASTree> trees(){return trees;}
+
+        public Throwable error(){return error;}
+    }
+
+    public BatchParser(){
+        this(new BasicPaser(),ForkJoinPool.commonPool());
+    }
+
+    public BatchParser(BasicPaser parser,ForkJoinPool pool){
+        this.parser = parser.freeze();
+        this.pool = pool;
+    }
+
+    public BatchParser charset(Charset charset){
+        this.charset = charset;
+        return this;
+    }
+
+    public List<Result> parse(Path dir) throws IOException{
+        return parse(dir,"*");
+    }
+
+    public List<Result> parse(Path dir,String glob) throws IOException{
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,glob)){
+            for(Path p:stream){
+                if(Files.isRegularFile(p)) files.add(p);
+            }
+        }
+        Collections.sort(files);
+        return parse(files);
+    }
+
+    public List<Result> parse(List<Path> files){
+        ArrayList<Future<Result>> futures = new ArrayList<>(files.size());
+        for(final Path p:files){
+            futures.add(pool.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return parseFile(p);
+                }
+            }));
+        }
+        ArrayList<Result> results = new ArrayList<>(files.size());
+        for(int i = 0;i<files.size();i++){
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+                throw new StoneException("batch parse interrupted after "+i+" files",e);
+            } catch (ExecutionException e) {
+                cancel(futures);
+                throw new StoneException("batch parse failed on "+files.get(i),e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static void cancel(List<Future<Result>> futures){
+        for(Future<Result> f:futures){
+            f.cancel(false);
+        }
+    }
+
+    protected Result parseFile(Path path){
+        ArrayList<ASTree> trees = new ArrayList<>();
+        try {
+            Lexer l = TokenBuffer.map(path,charset).lexer();
+            while (l.peek(0) != Token.EOF){
+                trees.add(parser.parse(l));
+            }
+            return new Result(path,trees,null);
+        } catch (IOException | ParseException | RuntimeException | StackOverflowError e) {
+            return new Result(path,trees,e);
+        }
+    }
+}
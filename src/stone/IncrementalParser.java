@@ -0,0 +1,207 @@
+package stone;
+
+import stone.ast.ASTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalParser {
+    private BasicPaser parser;
+    private StringBuilder text;
+    private ArrayList<Statement> statements = new ArrayList<>();
+
+    public static class Statement{
+        private int length;
+        private int firstLine;
+        private TokenBuffer tokens;
+        private ASTree tree;
+        private ParseException error;
+
+        protected Statement(int length,int firstLine,TokenBuffer tokens,ASTree tree){
+            this.length = length;
+            this.firstLine = firstLine;
+            this.tokens = tokens;
+            this.tree = tree;
+        }
+
+        protected Statement(int length,int firstLine,ParseException error){
+            this(length,firstLine,null,null);
+            this.error = error;
+        }
+
+        public int length(){return length;}
+
+        public int firstLine(){return firstLine;}
+
+        public TokenBuffer tokens(){return tokens;}
+
+        public ASTree tree(){return tree;}
+
+        public ParseException error(){return error;}
+
+        protected void shiftLines(int delta){
+            firstLine += delta;
+            if(tokens != null) tokens.shiftLines(delta);
+        }
+    }
+
+    public IncrementalParser(BasicPaser parser,CharSequence source){
+        this.parser = parser;
+        this.text = new StringBuilder(source);
+        parse(0,1,0,new ArrayList<Statement>(),0);
+    }
+
+    public void edit(int offset,int length,CharSequence replacement){
+        if(offset < 0 || length < 0 || offset+length > text.length())
+            throw new IndexOutOfBoundsException("bad edit range "+offset+"+"+length);
+        int a = 0;
+        int start = 0;
+        while (a < statements.size()-1 && start+statements.get(a).length <= offset){
+            start += statements.get(a++).length;
+        }
+        if(a > 0 && start == offset){
+            start -= statements.get(--a).length;
+        }
+        int line = a < statements.size() ? statements.get(a).firstLine : 1;
+        List<Statement> rest = statements.subList(a,statements.size());
+        ArrayList<Statement> old = new ArrayList<>(rest);
+        rest.clear();
+        text.replace(offset,offset+length,replacement.toString());
+        parse(start,line,offset+replacement.length(),old,replacement.length()-length);
+    }
+
+    public String text(){
+        return text.toString();
+    }
+
+    public List<Statement> statements(){
+        return Collections.unmodifiableList(statements);
+    }
+
+    public List<ASTree> trees(){
+        ArrayList<ASTree> list = new ArrayList<>(statements.size());
+        for(Statement s:statements){
+            if(s.error == null) list.add(s.tree);
+        }
+        return list;
+    }
+
+    public ParseException error(){
+        return statements.isEmpty() ? null : statements.get(statements.size()-1).error;
+    }
+
+    protected void parse(int pos,int line,int editEnd,List<Statement> old,int delta){
+        Feed feed = new Feed(text,pos,line);
+        int reused = 0;
+        int oldEnd = pos;
+        try {
+            while (feed.peek(0) != Token.EOF){
+                ASTree t = parser.parse(feed);
+                Statement s = feed.finish(t,pos);
+                statements.add(s);
+                pos += s.length;
+                if(pos >= editEnd){
+                    while (reused < old.size() && oldEnd < pos-delta){
+                        oldEnd += old.get(reused++).length;
+                    }
+                    if(oldEnd == pos-delta && reused < old.size() && oldEnd+old.get(reused).length > editEnd-delta){
+                        int lineDelta = feed.startLine()-old.get(reused).firstLine;
+                        for(Statement r:old.subList(reused,old.size())){
+                            if(r.error != null && lineDelta != 0){
+                                parse(pos,r.firstLine+lineDelta,0,old.subList(0,0),0);
+                                return;
+                            }
+                            r.shiftLines(lineDelta);
+                            statements.add(r);
+                            pos += r.length;
+                        }
+                        return;
+                    }
+                }
+            }
+        } catch (ParseException e) {
+            statements.add(new Statement(text.length()-pos,feed.startLine(),e));
+        }
+    }
+
+    protected static class Feed extends Lexer{
+        private CharSequence text;
+        private Scanner scanner;
+        private TokenBuffer tokens;
+        private int next;
+        private int startLine;
+        private int nextLine;
+        private boolean hasMore = true;
+        private int cached = -1;
+        private Token current;
+
+        protected Feed(CharSequence text,int from,int line){
+            this.text = text;
+            this.scanner = new Scanner(text,from,text.length(),line);
+            this.tokens = new TokenBuffer(text);
+            this.startLine = line;
+            this.nextLine = line;
+        }
+
+        @Override
+        public Token read() throws ParseException{
+            Token t = peek(0);
+            if(t != Token.EOF){
+                nextLine = tokens.kind(next) == Scanner.EOL ? tokens.line(next)+1 : tokens.line(next);
+                next++;
+            }
+            return t;
+        }
+
+        @Override
+        public Token peek(int i) throws ParseException{
+            while (next+i >= tokens.size()){
+                if(!scan()) return Token.EOF;
+            }
+            if(next+i != cached){
+                current = tokens.token(next+i);
+                cached = next+i;
+            }
+            return current;
+        }
+
+        private boolean scan() throws ParseException{
+            int k = scanner.next();
+            if(k != Scanner.EOF){
+                tokens.add(k,scanner.line(),scanner.start(),scanner.end(),
+                        k == Scanner.NUM ? scanner.number() : scanner.symbol());
+                return true;
+            } else if(hasMore && scanner.midLine()){
+                hasMore = false;
+                tokens.add(Scanner.EOL,scanner.lineNumber(),text.length(),text.length(),Symbols.EOL);
+                return true;
+            } else {
+                hasMore = false;
+                return false;
+            }
+        }
+
+        protected Statement finish(ASTree tree,int from) throws ParseException{
+            int consumed = next;
+            int end = peek(0) == Token.EOF ? text.length() : tokens.end(consumed-1);
+            TokenBuffer own = tokens;
+            tokens = new TokenBuffer(text);
+            for(int i = consumed;i<own.size();i++){
+                tokens.add(own.kind(i),own.line(i),own.start(i),own.end(i),
+                        own.kind(i) == Scanner.NUM ? own.number(i) : own.symbol(i));
+            }
+            next = 0;
+            cached = -1;
+            own.truncate(consumed);
+            own.rebase(text.subSequence(from,end).toString(),from);
+            Statement s = new Statement(end-from,startLine,own.trim(),tree);
+            startLine = nextLine;
+            return s;
+        }
+
+        protected int startLine(){
+            return startLine;
+        }
+    }
+}
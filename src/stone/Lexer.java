@@ -3,31 +3,88 @@ package stone;
 import com.sun.imageio.plugins.png.PNGImageReader;
 import org.omg.CORBA.PRIVATE_MEMBER;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Reader;
-import java.util.ArrayList;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class Lexer {
+public class Lexer implements Closeable {
 
     public static String rg
             = "\\s*((//.*)|([0-9]+)|(\"(\\\\\"|\\\\\\\\|\\\\n|[^\"])*\")"
             + "|[A-Z_a-z][A-Z_a-z0-9]*|==|<=|>=|&&|\\|\\||\\p{Punct})?";
-    private Pattern pattern = Pattern.compile(rg);
-    private ArrayList<Token> queue = new ArrayList<>();
+    public static final int DEFAULT_LOOKAHEAD = 64;
+    private Pattern pattern;
+    private Token[] queue = new Token[8];
+    private int head;
+    private int size;
+    private int maxLookahead;
     private boolean hasMore;
     private LineNumberReader reader;
+    private boolean regex;
+    private Scanner scanner = new Scanner("",0);
+    private Matcher matcher;
+    private String line;
+    private int lineNo;
+    private int linePos;
 
     public Lexer(Reader reader){
+        this(reader,false);
+    }
+
+    public Lexer(Reader reader,boolean regex){
+        this(reader,regex,DEFAULT_LOOKAHEAD);
+    }
+
+    public Lexer(Reader reader,boolean regex,int maxLookahead){
         hasMore = true;
         this.reader = new LineNumberReader(reader);
+        this.regex = regex;
+        this.maxLookahead = maxLookahead;
+        if(regex) pattern = Pattern.compile(rg);
+    }
+
+    public Lexer(CharSequence source){
+        hasMore = true;
+        maxLookahead = DEFAULT_LOOKAHEAD;
+        scanner.reset(source,0,source.length(),1);
+    }
+
+    protected Lexer(){
+        maxLookahead = DEFAULT_LOOKAHEAD;
+    }
+
+    public static Lexer map(Path path) throws IOException{
+        return map(path,StandardCharsets.UTF_8);
+    }
+
+    public static Lexer map(Path path,Charset charset) throws IOException{
+        return new Lexer(decode(path,charset));
+    }
+
+    public static CharBuffer decode(Path path,Charset charset) throws IOException{
+        try (FileChannel channel = FileChannel.open(path,StandardOpenOption.READ)){
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+            return charset.newDecoder().decode(bytes);
+        }
     }
 
     public Token read() throws ParseException{
         if(fillQueue(0)){
-            return queue.remove(0);
+            Token t = queue[head];
+            queue[head] = null;
+            head = (head+1)&(queue.length-1);
+            size--;
+            return t;
         } else {
             return Token.EOF;
         }
@@ -35,26 +92,75 @@ public class Lexer {
 
     public Token peek(int i )throws ParseException{
         if(fillQueue(i)){
-            return queue.get(i);
+            return queue[(head+i)&(queue.length-1)];
         } else {
             return Token.EOF;
         }
     }
 
     private boolean fillQueue(int i ) throws ParseException{
-        while (i>=queue.size()){
-            if(hasMore){
-                readLine();
-            } else {
+        if(i >= maxLookahead)
+            throw new ParseException("lookahead "+i+" exceeds the limit "+maxLookahead);
+        while (i>=size){
+            if(!nextToken()){
                 return false;
             }
         }
         return true;
     }
 
-    protected void readLine() throws ParseException{
-        String line = null;
+    protected void add(Token token){
+        if(size == queue.length){
+            Token[] q = new Token[queue.length*2];
+            for(int k = 0;k<size;k++){
+                q[k] = queue[(head+k)&(queue.length-1)];
+            }
+            queue = q;
+            head = 0;
+        }
+        queue[(head+size)&(queue.length-1)] = token;
+        size++;
+    }
+
+    protected boolean nextToken() throws ParseException{
+        if(reader == null){
+            return scanBuffer();
+        }
+        while (line == null){
+            if(!hasMore) return false;
+            readLine();
+        }
+        if(regex ? matchToken() : scanToken()){
+            return true;
+        } else {
+            add(new IdToken(lineNo,Symbols.EOL));
+            line = null;
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        hasMore = false;
+        line = null;
+        if(reader != null) reader.close();
+    }
 
+    protected boolean scanBuffer() throws ParseException{
+        if(scanner.next() != Scanner.EOF){
+            addToken(scanner);
+            return true;
+        } else if(hasMore && scanner.midLine()){
+            hasMore = false;
+            add(new IdToken(scanner.lineNumber(),Symbols.EOL));
+            return true;
+        } else {
+            hasMore = false;
+            return false;
+        }
+    }
+
+    protected void readLine() throws ParseException{
         try {
             line = reader.readLine();
 
@@ -66,21 +172,52 @@ public class Lexer {
             return;
         }
 
-        int lineNo = reader.getLineNumber();
-        Matcher matcher = pattern.matcher(line);
-        matcher.useTransparentBounds(true).useAnchoringBounds(true);
-        int pos = 0;
+        lineNo = reader.getLineNumber();
+        if(regex){
+            matcher = pattern.matcher(line);
+            matcher.useTransparentBounds(true).useAnchoringBounds(true);
+            linePos = 0;
+        } else {
+            scanner.reset(line,0,line.length(),lineNo);
+        }
+    }
+
+    protected boolean scanToken() throws ParseException{
+        if(scanner.next() != Scanner.EOF){
+            addToken(scanner);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    protected void addToken(Scanner s){
+        Token token;
+        if(s.kind() == Scanner.NUM){
+            token = new NumToken(s.line(),s.number());
+        } else if(s.kind() == Scanner.STR){
+            token = new StrToken(s.line(),s.text());
+        } else {
+            int symbol = s.symbol();
+            token = symbol >= 0 ? new IdToken(s.line(),symbol) : new IdToken(s.line(),s.text());
+        }
+        add(token);
+    }
+
+    protected boolean matchToken() throws ParseException{
         int endPos = line.length();
-        while (pos < endPos){
-            matcher.region(pos,endPos);
-            if(matcher.lookingAt()){
+        while (linePos < endPos){
+            matcher.region(linePos,endPos);
+            if(matcher.lookingAt() && matcher.end() > linePos){
+                linePos = matcher.end();
+                int n = size;
                 addToken(lineNo,matcher);
-                pos = matcher.end();
+                if(size > n) return true;
             } else{
                 throw new ParseException("bad token at line "+lineNo);
             }
         }
-        queue.add(new IdToken(lineNo,Token.EOL));
+        return false;
     }
 
     protected void addToken(int no,Matcher matcher){
@@ -95,7 +232,7 @@ public class Lexer {
                 } else {
                     token = new IdToken(no,m);
                 }
-                queue.add(token);
+                add(token);
             }
         }
     }
@@ -120,20 +257,31 @@ public class Lexer {
     }
 
     protected static class IdToken extends Token{
+        private int symbol;
         private String text;
 
         protected IdToken(int lineNumber,String id) {
-            super(lineNumber);
+            this(lineNumber,Symbols.lookup(id));
             text = id;
         }
 
+        protected IdToken(int lineNumber,int symbol) {
+            super(lineNumber);
+            this.symbol = symbol;
+        }
+
         @Override
         public boolean isIdF() {
             return true;
         }
 
         public String getText(){
-            return text;
+            return text != null ? text : Symbols.name(symbol);
+        }
+
+        @Override
+        public int getSymbol() {
+            return symbol;
         }
     }
 
@@ -161,7 +309,7 @@ public class Lexer {
         }
     }
 
-    private static class StrToken extends Token{
+    protected static class StrToken extends Token{
         private String str;
 
         protected StrToken(int lineNumber,String s) {
@@ -0,0 +1,56 @@
+package stone;
+
+import java.util.Arrays;
+
+/**
+ * A token cursor that memoizes {@link Parser#match} by (rule, token index).
+ * Rules never backtrack once chosen, so parse results are not worth keeping, but
+ * a choice without a dispatch table probes the same nested rules again when the
+ * chosen alternative is parsed. The grammar must not change while a cursor is in use.
+ */
+public class PackratLexer extends TokenBuffer.Cursor {
+    public static final int DEFAULT_CAPACITY = 1<<10;
+
+    private long[] keys;
+    private boolean[] results;
+    private int mask;
+    private int hits;
+    private int misses;
+
+    public PackratLexer(TokenBuffer buffer){
+        this(buffer,DEFAULT_CAPACITY);
+    }
+
+    public PackratLexer(TokenBuffer buffer,int capacity){
+        super(buffer);
+        int n = Integer.highestOneBit(Math.max(capacity,2)-1)<<1;
+        keys = new long[n];
+        results = new boolean[n];
+        mask = n-1;
+    }
+
+    protected boolean match(Parser rule) throws ParseException{
+        long key = ((long)rule.id<<32 | index())+1;
+        int h = (int)(key^(key>>>32))*0x9E3779B9;
+        int slot = (h^(h>>>16))&mask;
+        if(keys[slot] == key){
+            hits++;
+            return results[slot];
+        }
+        misses++;
+        boolean r = rule.matchRule(this);
+        keys[slot] = key;
+        results[slot] = r;
+        return r;
+    }
+
+    public int hits(){return hits;}
+
+    public int misses(){return misses;}
+
+    public void clear(){
+        Arrays.fill(keys,0);
+        Arrays.fill(results,false);
+        hits = misses = 0;
+    }
+}
@@ -0,0 +1,131 @@
+package stone;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelLexer {
+    public static final int DEFAULT_CHUNK = 1<<20;
+
+    private CharSequence source;
+    private int[] bounds;
+    private int[] firstLines;
+    private TokenBuffer[] results;
+    private ParseException[] errors;
+
+    protected ParallelLexer(CharSequence source,int chunkSize){
+        this.source = source;
+        this.bounds = split(source,chunkSize);
+        int n = bounds.length-1;
+        firstLines = new int[n];
+        results = new TokenBuffer[n];
+        errors = new ParseException[n];
+    }
+
+    public static TokenBuffer lex(CharSequence source) throws ParseException{
+        return lex(source,DEFAULT_CHUNK,ForkJoinPool.commonPool());
+    }
+
+    public static TokenBuffer lex(CharSequence source,int chunkSize,ForkJoinPool pool) throws ParseException{
+        if(source.length() <= chunkSize){
+            return TokenBuffer.of(source);
+        }
+        return new ParallelLexer(source,chunkSize).run(pool);
+    }
+
+    public static TokenBuffer map(Path path) throws IOException,ParseException{
+        return lex(Lexer.decode(path,StandardCharsets.UTF_8));
+    }
+
+    protected TokenBuffer run(ForkJoinPool pool) throws ParseException{
+        int n = results.length;
+        pool.invoke(new Task(0,n,false));
+        int line = 1;
+        for(int k = 0;k<n;k++){
+            int lines = firstLines[k];
+            firstLines[k] = line;
+            line += lines;
+        }
+        pool.invoke(new Task(0,n,true));
+        int size = 0;
+        for(int k = 0;k<n;k++){
+            if(errors[k] != null) throw errors[k];
+            size += results[k].size();
+        }
+        TokenBuffer buffer = new TokenBuffer(source,size);
+        for(TokenBuffer b:results){
+            buffer.append(b);
+        }
+        return buffer;
+    }
+
+    protected void count(int k){
+        int lines = 0;
+        for(int i = bounds[k];i<bounds[k+1];i++){
+            char c = source.charAt(i);
+            if(c == '\n' || c == '\r' && (i+1 == source.length() || source.charAt(i+1) != '\n')){
+                lines++;
+            }
+        }
+        firstLines[k] = lines;
+    }
+
+    protected void lex(int k){
+        int from = bounds[k];
+        int to = bounds[k+1];
+        TokenBuffer b = new TokenBuffer(source);
+        try {
+            b.scan(from,to,firstLines[k]);
+        } catch (ParseException e) {
+            errors[k] = e;
+        }
+        results[k] = b;
+    }
+
+    private static int[] split(CharSequence source,int chunkSize){
+        int len = source.length();
+        int[] bounds = new int[len/chunkSize+2];
+        int n = 0;
+        int pos = 0;
+        while (pos < len){
+            bounds[n++] = pos;
+            pos = Math.min(len,pos+chunkSize);
+            while (pos < len && !Scanner.isLineEnd(source.charAt(pos-1))){
+                pos++;
+            }
+            if(pos < len && source.charAt(pos-1) == '\r' && source.charAt(pos) == '\n'){
+                pos++;
+            }
+        }
+        bounds[n++] = len;
+        int[] b = new int[n];
+        System.arraycopy(bounds,0,b,0,n);
+        return b;
+    }
+
+    private class Task extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+        private int from;
+        private int to;
+        private boolean lex;
+
+        Task(int from,int to,boolean lex){
+            this.from = from;
+            this.to = to;
+            this.lex = lex;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from == 1){
+                if(lex) lex(from);
+                else count(from);
+            } else {
+                int mid = (from+to)>>>1;
+                invokeAll(new Task(from,mid,lex),new Task(mid,to,lex));
+            }
+        }
+    }
+}
@@ -4,19 +4,34 @@ import stone.ast.ASTLeaf;
 import stone.ast.ASTList;
 import stone.ast.ASTree;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Parser {
     protected static abstract class Element{
         protected abstract void parse(Lexer lexer, List<ASTree> res) throws ParseException;
         protected abstract boolean match(Lexer lexer) throws ParseException;
 
+        protected First first(FirstSets sets){
+            return null;
+        }
+
+        protected void children(List<Parser> list){}
     }
 
     protected static class Tree extends Element{
@@ -33,11 +48,23 @@ public class Parser {
         protected boolean match(Lexer lexer) throws ParseException {
             return parser.match(lexer);
         }
+
+        @Override
+        protected First first(FirstSets sets) {
+            return sets.of(parser);
+        }
+
+        @Override
+        protected void children(List<Parser> list) {
+            list.add(parser);
+        }
     }
 
     protected static class OrTree extends Element{
 
         protected Parser[] parsers;
+        protected volatile Dispatch dispatch;
+        protected boolean frozen;
         protected OrTree(Parser[] p){
             parsers = p;
         }
@@ -58,6 +85,14 @@ public class Parser {
         }
 
         protected Parser choose(Lexer lexer)throws ParseException{
+            Dispatch d = dispatch;
+            if(d == null || !frozen && !d.isCurrent()){
+                d = rebuild();
+            }
+            if(d.symbols != null){
+                int i = d.choose(lexer.peek(0));
+                return i < 0 ? null : parsers[i];
+            }
             for(Parser p:parsers){
                 if(p.match(lexer)){
                     return p;
@@ -66,10 +101,77 @@ public class Parser {
             return null;
         }
 
+        // called mid-parse, so shadowed alternatives are only rejected by build()
+        protected Dispatch rebuild(){
+            try {
+                return prepare(new FirstSets(),false);
+            } catch (CopyStoneException e) {
+                return dispatch = new Dispatch(null,dependencies());
+            }
+        }
+
+        protected Dispatch prepare(FirstSets sets,boolean strict){
+            Dependencies deps = dependencies();
+            First[] firsts = new First[parsers.length];
+            First union = First.NONE;
+            for(int i = 0;i<parsers.length;i++){
+                firsts[i] = sets.of(parsers[i]);
+                if(firsts[i] == null){
+                    return dispatch = new Dispatch(null,deps);
+                }
+                First overlap = firsts[i].intersect(union);
+                if(!firsts[i].isEmpty() && firsts[i].subsetOf(union)){
+                    if(strict) throw new CopyStoneException("alternative "+i+" of a choice can never be chosen: "
+                            +firsts[i]+" is taken by earlier alternatives");
+                } else if(!overlap.isEmpty()){
+                    sets.conflicts.add("alternative "+i+" of a choice overlaps earlier alternatives on "+overlap);
+                }
+                union = union.union(firsts[i]);
+            }
+            return dispatch = new Dispatch(firsts,deps);
+        }
+
+        // the alternatives and every rule (and reserved set) reachable from them in first position
+        protected Dependencies dependencies(){
+            ArrayList<Parser> todo = new ArrayList<>();
+            IdentityHashMap<Parser,Parser> done = new IdentityHashMap<>();
+            IdentityHashMap<Reserved,Reserved> reserved = new IdentityHashMap<>();
+            Collections.addAll(todo,parsers);
+            while (!todo.isEmpty()){
+                Parser p = todo.remove(todo.size()-1);
+                if(done.put(p,p) != null || p.elements.isEmpty()) continue;
+                Element e = p.elements.get(0);
+                e.children(todo);
+                if(e instanceof IdToken && ((IdToken) e).symbols != null){
+                    reserved.put(((IdToken) e).symbols,((IdToken) e).symbols);
+                }
+            }
+            return new Dependencies(done.keySet().toArray(new Parser[0]),
+                    reserved.keySet().toArray(new Reserved[0]));
+        }
+
+        @Override
+        protected First first(FirstSets sets) {
+            First f = First.NONE;
+            for(Parser p:parsers){
+                First pf = sets.of(p);
+                if(pf == null) return null;
+                f = f.union(pf);
+            }
+            return f;
+        }
+
+        @Override
+        protected void children(List<Parser> list) {
+            Collections.addAll(list,parsers);
+        }
+
         protected void insert( Parser p){
             Parser[] newPasers = new Parser[parsers.length+1];
             newPasers[0] = p;
             System.arraycopy(parsers,0,newPasers,1,parsers.length);
+            parsers = newPasers;
+            dispatch = null;
         }
     }
 
@@ -86,7 +188,7 @@ public class Parser {
         protected void parse(Lexer lexer, List<ASTree> res) throws ParseException {
             while (parser.match(lexer)){
                 ASTree t = parser.parse(lexer);
-                if(t.getClass() != ASTree.class || t.numChildren()>0){
+                if(t.getClass() != ASTList.class || t.numChildren()>0){
                     res.add(t);
                 }
                 if(onlyOnce) break;
@@ -97,13 +199,25 @@ public class Parser {
         protected boolean match(Lexer lexer) throws ParseException {
             return parser.match(lexer);
         }
+
+        @Override
+        protected First first(FirstSets sets) {
+            return sets.of(parser);
+        }
+
+        @Override
+        protected void children(List<Parser> list) {
+            list.add(parser);
+        }
     }
 
     protected static abstract class AToken extends Element{
         protected Factory factory;
+        protected Class<? extends ASTLeaf> type;
         protected AToken(Class<? extends ASTLeaf> type){
             if(type == null)
                 type = ASTLeaf.class;
+            this.type = type;
             factory = Factory.get(type,Token.class);
         }
 
@@ -127,14 +241,28 @@ public class Parser {
 
     protected static class IdToken extends AToken{
         HashSet<String> reserved;
+        Reserved symbols;
         protected IdToken(Class<? extends ASTLeaf> type,HashSet<String> r) {
             super(type);
-            reserved = r!=null?r:new HashSet<String>();
+            reserved = r!=null?r:new Reserved();
+            symbols = reserved instanceof Reserved ? (Reserved)reserved : null;
         }
 
         @Override
         protected boolean test(Token token) {
-            return token.isIdF() && !reserved.contains(token.getText());
+            if(!token.isIdF()) return false;
+            if(symbols != null) return !symbols.contains(token.getSymbol());
+            return !reserved.contains(token.getText());
+        }
+
+        @Override
+        protected First first(FirstSets sets) {
+            if(symbols == null) return null;
+            BitSet excluded = new BitSet();
+            for(String r:reserved){
+                excluded.set(Symbols.intern(r));
+            }
+            return First.identifiers(excluded);
         }
     }
 
@@ -148,6 +276,11 @@ public class Parser {
         protected boolean test(Token token) {
             return token.isNumber();
         }
+
+        @Override
+        protected First first(FirstSets sets) {
+            return First.NUMBER;
+        }
     }
 
     protected static class StrToken extends AToken{
@@ -160,20 +293,31 @@ public class Parser {
         protected boolean test(Token token) {
             return token.isString();
         }
+
+        @Override
+        protected First first(FirstSets sets) {
+            return First.STRING;
+        }
     }
 
     protected static class Leaf extends Element{
         protected String[] tokens;
+        protected int[] symbols;
         protected Leaf(String[] pat){
             tokens = pat;
+            symbols = new int[pat.length];
+            for(int i = 0;i<pat.length;i++){
+                symbols[i] = Symbols.intern(pat[i]);
+            }
         }
 
         @Override
         protected void parse(Lexer lexer, List<ASTree> res) throws ParseException {
             Token token = lexer.read();
             if(token.isIdF()){
-                for(String st :tokens){
-                    if(st.equals(token.getText())){
+                int sym = token.getSymbol();
+                for(int s:symbols){
+                    if(s == sym){
                         find(res,token);
                         return;
                     }
@@ -192,14 +336,24 @@ public class Parser {
         protected boolean match(Lexer lexer) throws ParseException {
             Token t = lexer.peek(0);
             if(t.isIdF()){
-                for(String s:tokens){
-                    if(s.equals(t.getText())){
+                int sym = t.getSymbol();
+                for(int s:symbols){
+                    if(s == sym){
                         return true;
                     }
                 }
             }
             return false;
         }
+
+        @Override
+        protected First first(FirstSets sets) {
+            BitSet ids = new BitSet();
+            for(int s:symbols){
+                ids.set(s);
+            }
+            return First.symbols(ids);
+        }
     }
 
     protected static class Skip extends Leaf{
@@ -223,17 +377,102 @@ public class Parser {
     public static class Operators extends HashMap<String,Precedence> {
         public static boolean LEFT = true;
         public static boolean RIGHT = false;
+        private Precedence[] table = new Precedence[16];
+        private boolean frozen;
+
         public void add(String name,int prec,boolean leftAssoc){
             put(name,new Precedence(prec,leftAssoc));
         }
+
+        public Precedence get(int symbol){
+            return symbol>=0 && symbol<table.length ? table[symbol] : null;
+        }
+
+        @Override
+        public Precedence put(String name, Precedence prec) {
+            checkFrozen(frozen);
+            int sym = Symbols.intern(name);
+            if(sym >= table.length){
+                table = Arrays.copyOf(table,Math.max(sym+1,table.length*2));
+            }
+            table[sym] = prec;
+            return super.put(name,prec);
+        }
+
+        @Override
+        public Precedence remove(Object name) {
+            checkFrozen(frozen);
+            if(name instanceof String){
+                int sym = Symbols.intern((String)name);
+                if(sym < table.length) table[sym] = null;
+            }
+            return super.remove(name);
+        }
+
+        @Override
+        public void clear() {
+            checkFrozen(frozen);
+            Arrays.fill(table,null);
+            super.clear();
+        }
+
+        public void freeze(){
+            frozen = true;
+        }
+    }
+
+    public static class Reserved extends HashSet<String> {
+        private static final long serialVersionUID = 1L;
+        private BitSet symbols = new BitSet();
+        private boolean frozen;
+        private volatile int modCount;
+
+        public boolean contains(int symbol){
+            return symbol>=0 && symbols.get(symbol);
+        }
+
+        @Override
+        public boolean add(String name) {
+            checkFrozen(frozen);
+            symbols.set(Symbols.intern(name));
+            modCount++;
+            edits.incrementAndGet();
+            return super.add(name);
+        }
+
+        @Override
+        public boolean remove(Object name) {
+            checkFrozen(frozen);
+            if(name instanceof String){
+                symbols.clear(Symbols.intern((String)name));
+            }
+            modCount++;
+            edits.incrementAndGet();
+            return super.remove(name);
+        }
+
+        @Override
+        public void clear() {
+            checkFrozen(frozen);
+            symbols.clear();
+            modCount++;
+            edits.incrementAndGet();
+            super.clear();
+        }
+
+        public void freeze(){
+            frozen = true;
+        }
     }
 
     protected static class Expr extends Element{
         protected Factory factory;
+        protected Class<? extends ASTree> type;
         protected Operators ops;
         protected Parser factor;
 
         protected Expr(Class<? extends ASTree> clazz, Parser exp, Operators map) {
+            this.type = clazz;
             this.factory = Factory.getForASTList(clazz);
             this.ops = map;
             this.factor = exp;
@@ -243,30 +482,45 @@ public class Parser {
         @Override
         protected void parse(Lexer lexer, List<ASTree> res) throws ParseException {
             ASTree right = factor.parse(lexer);
-            Precedence prec;
-            while ((prec = nextOperator(lexer))!=null){
-                right = doShift(lexer,right,prec.value);
+            Precedence next = nextOperator(lexer);
+            if(next == null){
+                res.add(right);
+                return;
+            }
+            ASTree[] operands = new ASTree[8];
+            ASTree[] operators = new ASTree[8];
+            Precedence[] precs = new Precedence[8];
+            int top = 0;
+            do {
+                while (top > 0 && !rightIsExpr(precs[top-1].value,next)){
+                    top--;
+                    right = make(operands[top],operators[top],right);
+                }
+                if(top == operands.length){
+                    operands = Arrays.copyOf(operands,top*2);
+                    operators = Arrays.copyOf(operators,top*2);
+                    precs = Arrays.copyOf(precs,top*2);
+                }
+                operands[top] = right;
+                operators[top] = new ASTLeaf(lexer.read());
+                precs[top++] = next;
+                right = factor.parse(lexer);
+            } while ((next = nextOperator(lexer)) != null);
+            while (top > 0){
+                top--;
+                right = make(operands[top],operators[top],right);
             }
             res.add(right);
         }
 
-        private ASTree doShift(Lexer lexer,ASTree left,int prec)throws ParseException{
-            ArrayList<ASTree> list = new ArrayList<>();
-            list.add(left);
-            list.add(new ASTLeaf(lexer.read()));
-            ASTree right = factor.parse(lexer);
-            Precedence next = null;
-            while ((next = nextOperator(lexer))!=null
-                    && rightIsExpr(prec,next)){
-                right = doShift(lexer,right,next.value);
-            }
-            list.add(right);
-            return factory.make(list);
+        private ASTree make(ASTree left,ASTree op,ASTree right){
+            return factory.make(Arrays.asList(left,op,right));
         }
+
         private Precedence nextOperator(Lexer lexer) throws ParseException{
             Token t = lexer.peek(0);
             if(t.isIdF()){
-                return ops.get(t.getText());
+                return ops.get(t.getSymbol());
             }else {
                 return null;
             }
@@ -284,9 +538,225 @@ public class Parser {
         protected boolean match(Lexer lexer) throws ParseException {
             return factor.match(lexer);
         }
+
+        @Override
+        protected First first(FirstSets sets) {
+            return sets.of(factor);
+        }
+
+        @Override
+        protected void children(List<Parser> list) {
+            list.add(factor);
+        }
+    }
+
+    public static final class First{
+        public static final First NONE = new First(false,false,false,false,new BitSet());
+        public static final First ALL = new First(true,true,true,true,new BitSet());
+        public static final First NUMBER = new First(false,true,false,false,new BitSet());
+        public static final First STRING = new First(false,false,true,false,new BitSet());
+
+        private final boolean eof;
+        private final boolean number;
+        private final boolean string;
+        private final boolean anyId;
+        private final BitSet ids;
+
+        private First(boolean eof,boolean number,boolean string,boolean anyId,BitSet ids){
+            this.eof = eof;
+            this.number = number;
+            this.string = string;
+            this.anyId = anyId;
+            this.ids = ids;
+        }
+
+        public static First identifiers(BitSet excluded){
+            return new First(false,false,false,true,excluded);
+        }
+
+        public static First symbols(BitSet ids){
+            return new First(false,false,false,false,ids);
+        }
+
+        public boolean contains(int symbol){
+            return anyId != ids.get(symbol);
+        }
+
+        public boolean eof(){return eof;}
+
+        public boolean number(){return number;}
+
+        public boolean string(){return string;}
+
+        public boolean anyId(){return anyId;}
+
+        public BitSet ids(){return (BitSet)ids.clone();}
+
+        public First union(First f){
+            BitSet b = (BitSet)ids.clone();
+            if(anyId && f.anyId) b.and(f.ids);
+            else if(anyId) b.andNot(f.ids);
+            else if(f.anyId) { b = (BitSet)f.ids.clone(); b.andNot(ids); }
+            else b.or(f.ids);
+            return new First(eof||f.eof,number||f.number,string||f.string,anyId||f.anyId,b);
+        }
+
+        public First intersect(First f){
+            BitSet b = (BitSet)ids.clone();
+            if(anyId && f.anyId) b.or(f.ids);
+            else if(anyId) { b = (BitSet)f.ids.clone(); b.andNot(ids); }
+            else if(f.anyId) b.andNot(f.ids);
+            else b.and(f.ids);
+            return new First(eof&&f.eof,number&&f.number,string&&f.string,anyId&&f.anyId,b);
+        }
+
+        public boolean subsetOf(First f){
+            if(eof && !f.eof || number && !f.number || string && !f.string) return false;
+            BitSet b;
+            if(anyId){
+                if(!f.anyId) return false;
+                b = (BitSet)f.ids.clone();
+                b.andNot(ids);
+                return b.isEmpty();
+            } else if(f.anyId){
+                return !ids.intersects(f.ids);
+            } else {
+                b = (BitSet)ids.clone();
+                b.andNot(f.ids);
+                return b.isEmpty();
+            }
+        }
+
+        public boolean isEmpty(){
+            return !eof && !number && !string && !anyId && ids.isEmpty();
+        }
+
+        public String toString(){
+            StringBuilder sb = new StringBuilder("{");
+            if(eof) sb.append("EOF, ");
+            if(number) sb.append("number, ");
+            if(string) sb.append("string, ");
+            if(anyId) sb.append(ids.isEmpty() ? "identifier, " : "identifier except ");
+            for(int i = ids.nextSetBit(0);i>=0;i = ids.nextSetBit(i+1)){
+                sb.append('"').append(Symbols.name(i).replace("\n","\\n")).append("\", ");
+            }
+            if(sb.length() > 1) sb.setLength(sb.length()-2);
+            return sb.append('}').toString();
+        }
+    }
+
+    // an edit to one grammar only invalidates the tables that were built from it
+    protected static class Dependencies{
+        protected final Parser[] parsers;
+        protected final int[] parserCounts;
+        protected final Reserved[] reserved;
+        protected final int[] reservedCounts;
+        private int confirmed;
+
+        protected Dependencies(Parser[] parsers,Reserved[] reserved){
+            confirmed = edits.get();
+            this.parsers = parsers;
+            this.reserved = reserved;
+            parserCounts = new int[parsers.length];
+            for(int i = 0;i<parsers.length;i++){
+                parserCounts[i] = parsers[i].modCount;
+            }
+            reservedCounts = new int[reserved.length];
+            for(int i = 0;i<reserved.length;i++){
+                reservedCounts[i] = reserved[i].modCount;
+            }
+        }
+
+        protected boolean isCurrent(){
+            int now = edits.get();
+            if(now == confirmed) return true;
+            for(int i = 0;i<parsers.length;i++){
+                if(parsers[i].modCount != parserCounts[i]) return false;
+            }
+            for(int i = 0;i<reserved.length;i++){
+                if(reserved[i].modCount != reservedCounts[i]) return false;
+            }
+            confirmed = now;
+            return true;
+        }
+    }
+
+    protected static class Dispatch{
+        protected Dependencies dependencies;
+        protected int eof = -1;
+        protected int number = -1;
+        protected int string = -1;
+        protected int identifier = -1;
+        protected int[] symbols;
+
+        protected Dispatch(First[] firsts,Dependencies dependencies){
+            this.dependencies = dependencies;
+            if(firsts == null) return;
+            BitSet mentioned = new BitSet();
+            for(int i = firsts.length-1;i>=0;i--){
+                First f = firsts[i];
+                mentioned.or(f.ids);
+                if(f.eof) eof = i;
+                if(f.number) number = i;
+                if(f.string) string = i;
+                if(f.anyId) identifier = i;
+            }
+            symbols = new int[mentioned.length()];
+            Arrays.fill(symbols,identifier);
+            for(int s = mentioned.nextSetBit(0);s>=0;s = mentioned.nextSetBit(s+1)){
+                symbols[s] = -1;
+                for(int i = 0;i<firsts.length;i++){
+                    if(firsts[i].contains(s)){
+                        symbols[s] = i;
+                        break;
+                    }
+                }
+            }
+        }
+
+        protected boolean isCurrent(){
+            return dependencies.isCurrent();
+        }
+
+        protected int choose(Token t){
+            if(t.isIdF()){
+                int s = t.getSymbol();
+                return s >= 0 && s < symbols.length ? symbols[s] : identifier;
+            } else if(t.isNumber()){
+                return number;
+            } else if(t.isString()){
+                return string;
+            } else {
+                return eof;
+            }
+        }
     }
 
+    protected static class FirstSets{
+        private static final First PENDING = First.symbols(new BitSet());
+        private IdentityHashMap<Parser,First> firsts = new IdentityHashMap<>();
+        protected List<String> conflicts = new ArrayList<>();
+
+        protected First of(Parser p){
+            if(firsts.containsKey(p)){
+                First f = firsts.get(p);
+                if(f == PENDING) throw new CopyStoneException("left-recursive rule");
+                return f;
+            }
+            firsts.put(p,PENDING);
+            First f = p.elements.isEmpty() ? First.ALL : p.elements.get(0).first(this);
+            firsts.put(p,f);
+            return f;
+        }
+    }
+
+
     public static final String factoryName = "create";
+    public static boolean reflectiveFactories = false;
+
+    protected interface Maker{
+        Object make(Object arg);
+    }
 
     protected static abstract class Factory{
         protected abstract ASTree make0(Object arg) throws Exception;
@@ -321,6 +791,10 @@ public class Parser {
         protected static Factory get(Class<? extends ASTree> clazz,Class<?> argType){
             if(clazz == null) return null;
 
+            if(!reflectiveFactories){
+                Maker maker = generate(clazz,argType);
+                if(maker != null) return new Direct(maker);
+            }
             try {
                 final Method m = clazz.getMethod(factoryName,new Class<?>[]{argType});
                 return new Factory() {
@@ -344,10 +818,58 @@ public class Parser {
             }
         }
 
+        protected static Maker generate(Class<? extends ASTree> clazz,Class<?> argType){
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target;
+            try {
+                target = lookup.unreflect(clazz.getMethod(factoryName,argType));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                try {
+                    target = lookup.findConstructor(clazz,MethodType.methodType(void.class,argType));
+                } catch (NoSuchMethodException | IllegalAccessException e1) {
+                    return null;
+                }
+            }
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup,"make",
+                        MethodType.methodType(Maker.class),
+                        MethodType.methodType(Object.class,Object.class),
+                        target,
+                        MethodType.methodType(target.type().returnType(),argType));
+                return (Maker)site.getTarget().invoke();
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+    }
+
+    protected static final class Direct extends Factory{
+        private final Maker maker;
+
+        protected Direct(Maker maker){
+            this.maker = maker;
+        }
+
+        @Override
+        protected ASTree make0(Object arg) {
+            return (ASTree)maker.make(arg);
+        }
+
+        @Override
+        protected ASTree make(Object arg) {
+            return (ASTree)maker.make(arg);
+        }
     }
 
+    private static final AtomicInteger nextId = new AtomicInteger();
+    // bumped by every edit to any grammar, so an unedited dispatch is confirmed with one compare
+    private static final AtomicInteger edits = new AtomicInteger();
     protected List<Element> elements;
     protected Factory factory;
+    protected Class<? extends ASTree> type;
+    protected final int id = nextId.getAndIncrement();
+    protected boolean frozen;
+    protected volatile int modCount;
 
     public Parser(Class<? extends ASTree> clazz){
         reset(clazz);
@@ -356,10 +878,11 @@ public class Parser {
     protected Parser(Parser p){
         elements = p.elements;
         factory = p.factory;
+        type = p.type;
     }
 
     public ASTree parse(Lexer lexer) throws ParseException{
-        ArrayList<ASTree> results = new ArrayList<>();
+        ArrayList<ASTree> results = new ArrayList<>(elements.size());
         for(Element e:elements){
             e.parse(lexer,results);
         }
@@ -368,6 +891,13 @@ public class Parser {
 
 
     public boolean match(Lexer lexer) throws ParseException{
+        if(lexer instanceof PackratLexer){
+            return ((PackratLexer)lexer).match(this);
+        }
+        return matchRule(lexer);
+    }
+
+    protected boolean matchRule(Lexer lexer) throws ParseException{
         if(elements.size() == 0) return true;
         else{
             Element e = elements.get(0);
@@ -384,86 +914,103 @@ public class Parser {
     }
 
     public Parser reset(){
+        checkFrozen(frozen);
         elements = new ArrayList<Element>();
+        modCount++;
+        edits.incrementAndGet();
         return this;
     }
 
     public Parser reset(Class<? extends ASTree> clazz){
+        checkFrozen(frozen);
         elements = new ArrayList<>();
         factory = Factory.getForASTList(clazz);
+        type = clazz;
+        modCount++;
+        edits.incrementAndGet();
         return this;
     }
 
+    protected void add(Element e){
+        checkFrozen(frozen);
+        elements.add(e);
+        modCount++;
+        edits.incrementAndGet();
+    }
+
     public Parser number(){return number(null);}
 
     public Parser number(Class<? extends ASTLeaf> clazz){
-        elements.add(new NumToken(clazz));
+        add(new NumToken(clazz));
         return this;
     }
 
     public Parser idF(HashSet<String> reserved){return idF(null,reserved);}
 
     public Parser idF(Class<? extends ASTLeaf> clazz,HashSet<String> reserved){
-        elements.add(new IdToken(clazz,reserved));
+        add(new IdToken(clazz,reserved));
         return this;
     }
 
     public Parser string(){return string(null);}
 
     public Parser string(Class<? extends ASTLeaf> clazz){
-        elements.add(new StrToken(clazz));
+        add(new StrToken(clazz));
         return this;
     }
 
     public Parser Token(String... pat){
-        elements.add(new Leaf(pat));
+        add(new Leaf(pat));
         return this;
     }
 
     public Parser sep(String... pat){
-        elements.add(new Skip(pat));
+        add(new Skip(pat));
         return this;
     }
 
     public Parser ast(Parser p){
-        elements.add(new Tree(p));
+        add(new Tree(p));
         return this;
     }
     public Parser or(Parser... p){
-        elements.add(new OrTree(p));
+        add(new OrTree(p));
         return this;
     }
 
     public Parser Maybe(Parser p){
         Parser p2 = new Parser(p);
         p2.reset();
-        elements.add(new OrTree(new Parser[]{p,p2}));
+        add(new OrTree(new Parser[]{p,p2}));
         return this;
     }
 
     public Parser option(Parser parser){
-        elements.add(new Repeat(parser,true));
+        add(new Repeat(parser,true));
         return this;
     }
 
     public Parser repeat(Parser parser){
-        elements.add(new Repeat(parser,false));
+        add(new Repeat(parser,false));
         return this;
     }
     public Parser experessino(Parser subexp,Operators operators){
-        elements.add(new Expr(null,subexp,operators));
+        add(new Expr(null,subexp,operators));
         return this;
     }
 
     public Parser expression(Class<? extends  ASTree> clazz, Parser p, Operators op){
-        elements.add(new Expr(clazz,p,op));
+        add(new Expr(clazz,p,op));
         return this;
     }
 
     public Parser insertChoice(Parser p){
+        checkFrozen(frozen);
         Element e = elements.get(0);
         if(e instanceof OrTree){
             ((OrTree) e).insert(p);
+            modCount++;
+            edits.incrementAndGet();
         } else{
             Parser otherwise = new Parser(this);
             reset(null);
@@ -471,4 +1018,96 @@ public class Parser {
         }
         return this;
     }
+
+    // a description of every reachable rule that changes whenever the trees it builds could
+    public String fingerprint(){
+        List<Parser> rules = reachable();
+        IdentityHashMap<Parser,Integer> ids = new IdentityHashMap<>();
+        for(Parser p:rules){
+            ids.put(p,ids.size());
+        }
+        StringBuilder sb = new StringBuilder();
+        for(Parser p:rules){
+            sb.append(ids.get(p)).append(' ').append(p.type == null ? "-" : p.type.getName()).append(':');
+            for(Element e:p.elements){
+                sb.append(' ').append(e.getClass().getName());
+                if(e instanceof Tree){
+                    sb.append(ids.get(((Tree) e).parser));
+                } else if(e instanceof Repeat){
+                    sb.append(((Repeat) e).onlyOnce ? '?' : '*').append(ids.get(((Repeat) e).parser));
+                } else if(e instanceof OrTree){
+                    for(Parser c:((OrTree) e).parsers){
+                        sb.append(ids.get(c)).append('|');
+                    }
+                } else if(e instanceof AToken){
+                    sb.append(((AToken) e).type.getName());
+                    if(e instanceof IdToken) sb.append(new TreeSet<>(((IdToken) e).reserved));
+                } else if(e instanceof Leaf){
+                    sb.append(Arrays.toString(((Leaf) e).tokens));
+                } else if(e instanceof Expr){
+                    Expr x = (Expr) e;
+                    sb.append(x.type == null ? "-" : x.type.getName()).append(ids.get(x.factor));
+                    for(String op:new TreeSet<>(x.ops.keySet())){
+                        Precedence prec = x.ops.get(op);
+                        sb.append(' ').append(op).append(prec.value).append(prec.leftAssoc ? 'L' : 'R');
+                    }
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public List<String> build(){
+        FirstSets sets = new FirstSets();
+        for(Parser p:reachable()){
+            for(Element e:p.elements){
+                if(e instanceof OrTree){
+                    ((OrTree) e).prepare(sets,true);
+                }
+            }
+        }
+        return sets.conflicts;
+    }
+
+    public Parser freeze(){
+        build();
+        for(Parser p:reachable()){
+            p.frozen = true;
+            for(Element e:p.elements){
+                if(e instanceof OrTree){
+                    ((OrTree) e).frozen = true;
+                } else if(e instanceof Expr){
+                    ((Expr) e).ops.freeze();
+                } else if(e instanceof IdToken && ((IdToken) e).symbols != null){
+                    ((IdToken) e).symbols.freeze();
+                }
+            }
+        }
+        return this;
+    }
+
+    public boolean isFrozen(){
+        return frozen;
+    }
+
+    protected List<Parser> reachable(){
+        ArrayList<Parser> todo = new ArrayList<>();
+        IdentityHashMap<Parser,Parser> done = new IdentityHashMap<>();
+        ArrayList<Parser> list = new ArrayList<>();
+        todo.add(this);
+        while (!todo.isEmpty()){
+            Parser p = todo.remove(todo.size()-1);
+            if(done.put(p,p) != null) continue;
+            list.add(p);
+            for(Element e:p.elements){
+                e.children(todo);
+            }
+        }
+        return list;
+    }
+
+    private static void checkFrozen(boolean frozen){
+        if(frozen) throw new IllegalStateException("grammar is frozen");
+    }
 }
@@ -0,0 +1,359 @@
+package stone;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class ParserGenerator {
+    private String packageName;
+    private String className;
+    private Parser.FirstSets sets = new Parser.FirstSets();
+    private IdentityHashMap<Parser,Integer> rules = new IdentityHashMap<>();
+    private ArrayList<Parser> order = new ArrayList<>();
+    private ArrayList<Parser> matchers = new ArrayList<>();
+    private LinkedHashMap<String,String> constants = new LinkedHashMap<>();
+    private StringBuilder methods = new StringBuilder();
+    private StringBuilder expressions = new StringBuilder();
+    private StringBuilder out;
+    private int indent;
+    private int locals;
+    private int exprs;
+
+    public ParserGenerator(Parser start,String className){
+        int dot = className.lastIndexOf('.');
+        this.packageName = dot < 0 ? null : className.substring(0,dot);
+        this.className = className.substring(dot+1);
+        rule(start);
+    }
+
+    public static String generate(Parser start,String className){
+        return new ParserGenerator(start,className).generate();
+    }
+
+    public String generate(){
+        for(int i = 0;i<order.size();i++){
+            emitRule(order.get(i),i);
+        }
+        for(int i = 0;i<matchers.size();i++){
+            emitMatch(matchers.get(i),i);
+        }
+        out = new StringBuilder();
+        indent = 0;
+        if(packageName != null){
+            line("package "+packageName+";");
+            line("");
+        }
+        line("import stone.*;");
+        line("import stone.ast.ASTLeaf;");
+        line("import stone.ast.ASTList;");
+        line("import stone.ast.ASTree;");
+        line("");
+        line("import java.util.ArrayList;");
+        line("import java.util.Arrays;");
+        line("");
+        line("public class "+className+" {");
+        for(Map.Entry<String,String> e:constants.entrySet()){
+            line("private static final int "+e.getValue()+" = Symbols.intern("+quote(e.getKey())+");");
+        }
+        line("");
+        line("public ASTree parse(Lexer lexer) throws ParseException{");
+        line("return rule0(lexer);");
+        line("}");
+        out.append(methods).append(expressions);
+        line("}");
+        return out.toString();
+    }
+
+    private int rule(Parser p){
+        Integer n = rules.get(p);
+        if(n == null){
+            n = order.size();
+            rules.put(p,n);
+            order.add(p);
+        }
+        return n;
+    }
+
+    private int matcher(Parser p){
+        for(int i = 0;i<matchers.size();i++){
+            if(matchers.get(i) == p) return i;
+        }
+        matchers.add(p);
+        return matchers.size()-1;
+    }
+
+    private String symbol(String name){
+        String c = constants.get(name);
+        if(c == null){
+            c = "S"+constants.size();
+            constants.put(name,c);
+        }
+        return c;
+    }
+
+    private void emitRule(Parser p,int n){
+        begin(methods);
+        locals = 0;
+        line("private static ASTree rule"+n+"(Lexer lexer) throws ParseException{");
+        line("ArrayList<ASTree> res = new ArrayList<>("+p.elements.size()+");");
+        for(Parser.Element e:p.elements){
+            element(e);
+        }
+        line("return "+(p.type == null ? "res.size() == 1 ? res.get(0) : new ASTList(res)"
+                : make(p.type,List.class,"res"))+";");
+        line("}");
+    }
+
+    private void element(Parser.Element e){
+        String t = "t"+(++locals);
+        if(e instanceof Parser.Tree){
+            line("res.add(rule"+rule(((Parser.Tree)e).parser)+"(lexer));");
+        } else if(e instanceof Parser.OrTree){
+            choice((Parser.OrTree)e,t);
+        } else if(e instanceof Parser.Repeat){
+            Parser.Repeat r = (Parser.Repeat)e;
+            line((r.onlyOnce ? "if" : "while ")+"(match"+matcher(r.parser)+"(lexer)){");
+            line("ASTree "+t+" = rule"+rule(r.parser)+"(lexer);");
+            line("if("+t+".getClass() != ASTList.class || "+t+".numChildren() > 0) res.add("+t+");");
+            line("}");
+        } else if(e instanceof Parser.Leaf){
+            Parser.Leaf l = (Parser.Leaf)e;
+            line("Token "+t+" = lexer.read();");
+            StringBuilder test = new StringBuilder();
+            for(String s:l.tokens){
+                test.append(test.length() == 0 ? "" : " && ").append(t).append(".getSymbol() != ").append(symbol(s));
+            }
+            line("if(!"+t+".isIdF() || "+(test.length() == 0 ? "true" : test)+")");
+            line("    throw new ParseException("+(l.tokens.length > 0 ? quote(l.tokens[0]+"expected ")+"," : "")+t+");");
+            if(!(e instanceof Parser.Skip)){
+                line("res.add(new ASTLeaf("+t+"));");
+            }
+        } else if(e instanceof Parser.AToken){
+            Parser.AToken a = (Parser.AToken)e;
+            line("Token "+t+" = lexer.read();");
+            line("if(!("+test(a,t)+")) throw new ParseException("+t+");");
+            line("res.add("+make(a.type,Token.class,t)+");");
+        } else if(e instanceof Parser.Expr){
+            line("res.add(expr"+expression((Parser.Expr)e)+"(lexer));");
+        } else {
+            throw new CopyStoneException("cannot generate "+e.getClass().getName());
+        }
+    }
+
+    private String test(Parser.AToken a,String t){
+        if(a instanceof Parser.NumToken){
+            return t+".isNumber()";
+        } else if(a instanceof Parser.StrToken){
+            return t+".isString()";
+        } else if(a instanceof Parser.IdToken){
+            StringBuilder sb = new StringBuilder(t+".isIdF()");
+            for(String r:new TreeSet<>(((Parser.IdToken)a).reserved)){
+                sb.append(" && ").append(t).append(".getSymbol() != ").append(symbol(r));
+            }
+            return sb.toString();
+        }
+        throw new CopyStoneException("cannot generate "+a.getClass().getName());
+    }
+
+    private void choice(Parser.OrTree or,String t){
+        Parser.First[] firsts = new Parser.First[or.parsers.length];
+        for(int i = 0;i<firsts.length;i++){
+            firsts[i] = sets.of(or.parsers[i]);
+            if(firsts[i] == null){
+                throw new CopyStoneException("cannot generate a choice that is not LL(1)");
+            }
+        }
+        Parser.Dispatch d = new Parser.Dispatch(firsts,or.dependencies());
+        String alt = "alt"+locals;
+        line("Token "+t+" = lexer.peek(0);");
+        line("int "+alt+";");
+        line("if("+t+".isIdF()){");
+        BitSet dispatched = new BitSet();
+        for(int s = 0;s<d.symbols.length;s++){
+            if(d.symbols[s] != d.identifier) dispatched.set(s);
+        }
+        TreeMap<Integer,StringBuilder> groups = new TreeMap<>();
+        for(Map.Entry<String,Integer> s:byName(dispatched).entrySet()){
+            StringBuilder g = groups.get(d.symbols[s.getValue()]);
+            if(g == null) groups.put(d.symbols[s.getValue()],g = new StringBuilder());
+            else g.append(" || ");
+            g.append(t).append(".getSymbol() == ").append(symbol(s.getKey()));
+        }
+        String prefix = "";
+        for(Map.Entry<Integer,StringBuilder> g:groups.entrySet()){
+            line(prefix+"if("+g.getValue()+") "+alt+" = "+g.getKey()+";");
+            prefix = "else ";
+        }
+        line((groups.isEmpty() ? "" : "else ")+alt+" = "+d.identifier+";");
+        line("} else if("+t+".isNumber()){");
+        line(alt+" = "+d.number+";");
+        line("} else if("+t+".isString()){");
+        line(alt+" = "+d.string+";");
+        line("} else {");
+        line(alt+" = "+d.eof+";");
+        line("}");
+        line("switch ("+alt+"){");
+        for(int i = 0;i<or.parsers.length;i++){
+            line("case "+i+": res.add(rule"+rule(or.parsers[i])+"(lexer)); break;");
+        }
+        line("default: throw new ParseException("+t+");");
+        line("}");
+    }
+
+    private int expression(Parser.Expr e){
+        int n = exprs++;
+        StringBuilder saved = out;
+        int savedIndent = indent;
+        begin(expressions);
+        String factor = "rule"+rule(e.factor)+"(lexer)";
+        String make = e.type == null ? "new ASTList(Arrays.asList(operands[top],operators[top],right))"
+                : make(e.type,List.class,"Arrays.asList(operands[top],operators[top],right)");
+        line("private static ASTree expr"+n+"(Lexer lexer) throws ParseException{");
+        line("ASTree right = "+factor+";");
+        line("int next = operator"+n+"(lexer.peek(0));");
+        line("if(next < 0) return right;");
+        line("ASTree[] operands = new ASTree[8];");
+        line("ASTree[] operators = new ASTree[8];");
+        line("int[] precs = new int[8];");
+        line("int top = 0;");
+        line("do {");
+        line("while (top > 0 && !rightIsExpr(precs[top-1],next)){");
+        line("top--;");
+        line("right = "+make+";");
+        line("}");
+        line("if(top == operands.length){");
+        line("operands = Arrays.copyOf(operands,top*2);");
+        line("operators = Arrays.copyOf(operators,top*2);");
+        line("precs = Arrays.copyOf(precs,top*2);");
+        line("}");
+        line("operands[top] = right;");
+        line("operators[top] = new ASTLeaf(lexer.read());");
+        line("precs[top++] = next;");
+        line("right = "+factor+";");
+        line("} while ((next = operator"+n+"(lexer.peek(0))) >= 0);");
+        line("while (top > 0){");
+        line("top--;");
+        line("right = "+make+";");
+        line("}");
+        line("return right;");
+        line("}");
+        line("");
+        line("private static int operator"+n+"(Token t){");
+        line("if(!t.isIdF()) return -1;");
+        line("int s = t.getSymbol();");
+        for(Map.Entry<String,Parser.Precedence> op:new TreeMap<>(e.ops).entrySet()){
+            Parser.Precedence p = op.getValue();
+            if(p.value < 0){
+                throw new CopyStoneException("cannot generate a negative precedence for "+op.getKey());
+            }
+            line("if(s == "+symbol(op.getKey())+") return "+(p.value<<1 | (p.leftAssoc ? 1 : 0))+";");
+        }
+        line("return -1;");
+        line("}");
+        if(n == 0){
+            line("");
+            line("private static boolean rightIsExpr(int prec,int next){");
+            line("return (next&1) != 0 ? prec>>1 < next>>1 : prec>>1 <= next>>1;");
+            line("}");
+        }
+        out = saved;
+        indent = savedIndent;
+        return n;
+    }
+
+    private void emitMatch(Parser p,int n){
+        Parser.First f = sets.of(p);
+        if(f == null){
+            throw new CopyStoneException("cannot generate a rule that is not LL(1)");
+        }
+        begin(methods);
+        line("private static boolean match"+n+"(Lexer lexer) throws ParseException{");
+        line("Token t = lexer.peek(0);");
+        StringBuilder test = new StringBuilder();
+        for(String s:byName(f.ids()).keySet()){
+            if(test.length() > 0) test.append(f.anyId() ? " && " : " || ");
+            test.append("t.getSymbol() ").append(f.anyId() ? "!= " : "== ").append(symbol(s));
+        }
+        line("if(t.isIdF()) return "+(test.length() == 0 ? String.valueOf(f.anyId()) : test)+";");
+        ArrayList<String> terms = new ArrayList<>();
+        if(f.number()) terms.add("t.isNumber()");
+        if(f.string()) terms.add("t.isString()");
+        if(f.eof()) terms.add("!t.isNumber() && !t.isString()");
+        line("return "+(terms.isEmpty() ? "false" : String.join(" || ",terms))+";");
+        line("}");
+    }
+
+    /** Symbol ids depend on what the JVM interned first, so generated code walks symbols by name. */
+    private static TreeMap<String,Integer> byName(BitSet ids){
+        TreeMap<String,Integer> names = new TreeMap<>();
+        for(int s = ids.nextSetBit(0);s>=0;s = ids.nextSetBit(s+1)){
+            names.put(Symbols.name(s),s);
+        }
+        return names;
+    }
+
+    private static String make(Class<?> type,Class<?> argType,String arg){
+        String name = type.getCanonicalName();
+        try {
+            type.getMethod(Parser.factoryName,argType);
+            return name+"."+Parser.factoryName+"("+arg+")";
+        } catch (NoSuchMethodException e) {
+            return "new "+name+"("+arg+")";
+        }
+    }
+
+    private void begin(StringBuilder target){
+        out = target;
+        indent = 1;
+        line("");
+    }
+
+    private void line(String s){
+        if(s.startsWith("}")) indent--;
+        if(!s.isEmpty()){
+            for(int i = 0;i<indent;i++) out.append("    ");
+        }
+        out.append(s).append('\n');
+        if(s.endsWith("{")) indent++;
+    }
+
+    private static String quote(String s){
+        StringBuilder sb = new StringBuilder("\"");
+        for(int i = 0;i<s.length();i++){
+            char c = s.charAt(i);
+            switch (c){
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                default:
+                    if(c < 0x20 || c > 0x7e) sb.append(String.format("\\u%04x",(int)c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String name = args.length > 0 ? args[0] : "stone.ch05.GeneratedParser";
+        String source = generate(new BasicPaser().program,name);
+        if(args.length > 1){
+            Path file = Paths.get(args[1],name.replace('.','/')+".java");
+            Files.createDirectories(file.getParent());
+            Files.write(file,source.getBytes(StandardCharsets.UTF_8));
+        } else {
+            System.out.print(source);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package stone;
+
+public class Scanner {
+    public static final int EOF = -1;
+    public static final int EOL = 0;
+    public static final int ID = 1;
+    public static final int NUM = 2;
+    public static final int STR = 3;
+
+    private CharSequence src;
+    private int pos;
+    private int end;
+    private int lineNo;
+    private int lineStart;
+
+    private int kind;
+    private int start;
+    private int stop;
+    private int number;
+    private int tokenLine;
+
+    public Scanner(CharSequence src,int lineNo){
+        this(src,0,src.length(),lineNo);
+    }
+
+    public Scanner(CharSequence src,int from,int to,int lineNo){
+        reset(src,from,to,lineNo);
+    }
+
+    public void reset(CharSequence src,int from,int to,int lineNo){
+        this.src = src;
+        this.pos = from;
+        this.end = to;
+        this.lineNo = lineNo;
+        this.lineStart = from;
+        this.kind = EOF;
+    }
+
+    public int next() throws ParseException{
+        while (pos < end){
+            char c = src.charAt(pos);
+            if(c == ' '||c=='\t'||c=='\f'||c==0x0B){
+                pos++;
+            } else if(c == '\n'||c=='\r'){
+                start = pos;
+                tokenLine = lineNo;
+                pos++;
+                if(c == '\r'&& pos<end && src.charAt(pos)=='\n') pos++;
+                stop = pos;
+                lineNo++;
+                lineStart = pos;
+                return kind = EOL;
+            } else if(c == '/' && pos+1<end && src.charAt(pos+1)=='/'){
+                while (pos<end && !isLineEnd(src.charAt(pos))) pos++;
+            } else {
+                return kind = token(c);
+            }
+        }
+        return kind = EOF;
+    }
+
+    private int token(char c) throws ParseException{
+        start = pos;
+        tokenLine = lineNo;
+        if(c>='0'&&c<='9'){
+            long n = 0;
+            while (pos<end && (c = src.charAt(pos))>='0'&&c<='9'){
+                n = n*10+(c-'0');
+                if(n>Integer.MAX_VALUE) throw new ParseException("bad number at line "+lineNo);
+                pos++;
+            }
+            number = (int)n;
+            stop = pos;
+            return NUM;
+        } else if(isIdStart(c)){
+            pos++;
+            while (pos<end && isIdPart(src.charAt(pos))) pos++;
+            stop = pos;
+            return ID;
+        } else if(c == '"' && string()){
+            return STR;
+        } else if(isPunct(c)){
+            pos++;
+            if(pos<end && isPair(c,src.charAt(pos))) pos++;
+            stop = pos;
+            return ID;
+        } else {
+            throw new ParseException("bad token at line "+lineNo);
+        }
+    }
+
+    private boolean string(){
+        int i = pos+1;
+        int lastQuote = -1;
+        while (i<end){
+            char c = src.charAt(i);
+            if(c == '"'){
+                return closeString(i);
+            } else if(isLineEnd(c)){
+                break;
+            } else if(c == '\\' && i+1<end){
+                char c2 = src.charAt(i+1);
+                if(c2 == '"'){
+                    lastQuote = i+1;
+                    i += 2;
+                } else if(c2 == '\\'||c2 == 'n'){
+                    i += 2;
+                } else {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        // an unterminated literal is closed by its last escaped quote, as the regex does by backtracking
+        return lastQuote>=0 && closeString(lastQuote);
+    }
+
+    private boolean closeString(int quote){
+        stop = quote+1;
+        pos = stop;
+        return true;
+    }
+
+    public int kind(){return kind;}
+
+    public int start(){return start;}
+
+    public int end(){return stop;}
+
+    public int line(){return tokenLine;}
+
+    public int lineNumber(){return lineNo;}
+
+    public int position(){return pos;}
+
+    public boolean midLine(){return pos>lineStart;}
+
+    public int number(){return number;}
+
+    public CharSequence source(){return src;}
+
+    public String text(){
+        switch (kind){
+            case ID: {
+                int symbol = symbol();
+                return symbol >= 0 ? Symbols.name(symbol) : src.subSequence(start,stop).toString();
+            }
+            case NUM:
+                return Integer.toString(number);
+            case STR:
+                return stringValue(src,start,stop);
+            case EOL:
+                return Token.EOL;
+            default:
+                return "";
+        }
+    }
+
+    public int symbol(){
+        switch (kind){
+            case ID:
+                return Symbols.lookup(src,start,stop);
+            case EOL:
+                return Symbols.EOL;
+            default:
+                return Symbols.NONE;
+        }
+    }
+
+    public static String stringValue(CharSequence s,int start,int stop){
+        StringBuilder sb = new StringBuilder(stop-start);
+        int len = stop-1;
+        for(int i = start+1;i<len;i++){
+            char c = s.charAt(i);
+            if(c == '\\'&& i+1< len){
+                char c2 = s.charAt(i+1);
+                if(c2 == '"'||c2=='\\'){
+                    c=s.charAt(++i);
+                } else if(c2=='n'){
+                    ++i;
+                    c = '\n';
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isPair(char c,char c2){
+        return c2 == '=' ? c == '=' || c == '<' || c == '>'
+                : (c2 == '&' || c2 == '|') && c == c2;
+    }
+
+    public static boolean isLineEnd(char c){
+        return c == '\n'||c == '\r';
+    }
+
+    private static boolean isIdStart(char c){
+        return c>='A'&&c<='Z' || c>='a'&&c<='z' || c=='_';
+    }
+
+    private static boolean isIdPart(char c){
+        return isIdStart(c) || c>='0'&&c<='9';
+    }
+
+    private static boolean isPunct(char c){
+        return c>=0x21 && c<=0x7E && !isIdPart(c);
+    }
+}
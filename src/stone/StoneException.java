@@ -4,6 +4,7 @@ import stone.ast.ASTree;
 
 public class StoneException extends RuntimeException {
     public StoneException(String m) { super(m); }
+    public StoneException(String m, Throwable cause) { super(m, cause); }
     public StoneException(String m, ASTree t) {
         super(m + " " + t.location());
     }
@@ -0,0 +1,141 @@
+package stone;
+
+public final class Symbols {
+    public static final int NONE = -1;
+    public static final int EOL = 0;
+    public static final int ASSIGN = 1;
+    public static final int EQ = 2;
+    public static final int GT = 3;
+    public static final int LT = 4;
+    public static final int PLUS = 5;
+    public static final int MINUS = 6;
+    public static final int TIMES = 7;
+    public static final int DIVIDE = 8;
+    public static final int MODULO = 9;
+    public static final int LE = 10;
+    public static final int GE = 11;
+    public static final int AND = 12;
+    public static final int OR = 13;
+
+    private static final String[] PREDEFINED = {
+            Token.EOL, "=", "==", ">", "<", "+", "-", "*", "/", "%", "<=", ">=", "&&", "||"
+    };
+
+    public static final int DEFAULT_LIMIT = 1<<16;
+
+    private static volatile String[] names = new String[256];
+    private static volatile int[] slots = new int[512];
+    private static int size;
+    private static volatile int limit = Integer.getInteger("stone.symbols.limit",DEFAULT_LIMIT);
+
+    static {
+        for(String s:PREDEFINED){
+            intern(s);
+        }
+    }
+
+    private Symbols(){}
+
+    public static int intern(String s){
+        return intern(s,0,s.length());
+    }
+
+    public static int intern(CharSequence s,int start,int end){
+        return find(s,start,end,false);
+    }
+
+    public static int lookup(String s){
+        return lookup(s,0,s.length());
+    }
+
+    public static int lookup(CharSequence s,int start,int end){
+        return find(s,start,end,true);
+    }
+
+    public static int limit(){
+        return limit;
+    }
+
+    public static void setLimit(int n){
+        limit = n;
+    }
+
+    private static int find(CharSequence s,int start,int end,boolean bounded){
+        int[] t = slots;
+        String[] n = names;
+        int mask = t.length-1;
+        for(int i = hash(s,start,end)&mask;;i = (i+1)&mask){
+            int id = t[i]-1;
+            String name = id >= 0 && id < n.length ? n[id] : null;
+            if(name == null){
+                return insert(s,start,end,bounded);
+            } else if(equals(name,s,start,end)){
+                return id;
+            }
+        }
+    }
+
+    private static synchronized int insert(CharSequence s,int start,int end,boolean bounded){
+        int mask = slots.length-1;
+        for(int i = hash(s,start,end)&mask;;i = (i+1)&mask){
+            int id = slots[i]-1;
+            if(id < 0){
+                if(bounded && size >= limit) return NONE;
+                return add(i,s.subSequence(start,end).toString());
+            } else if(equals(names[id],s,start,end)){
+                return id;
+            }
+        }
+    }
+
+    public static String name(int id){
+        return names[id];
+    }
+
+    public static synchronized int size(){
+        return size;
+    }
+
+    private static int add(int slot,String s){
+        int id = size++;
+        if(id == names.length){
+            String[] n = new String[id*2];
+            System.arraycopy(names,0,n,0,id);
+            names = n;
+        }
+        names[id] = s;
+        slots[slot] = id+1;
+        if(size*2 > slots.length){
+            rehash();
+        }
+        return id;
+    }
+
+    private static void rehash(){
+        int[] s = new int[slots.length*2];
+        int mask = s.length-1;
+        for(int id = 0;id<size;id++){
+            String n = names[id];
+            int i = hash(n,0,n.length())&mask;
+            while (s[i] != 0) i = (i+1)&mask;
+            s[i] = id+1;
+        }
+        slots = s;
+    }
+
+    private static int hash(CharSequence s,int start,int end){
+        int h = 0;
+        for(int i = start;i<end;i++){
+            h = 31*h+s.charAt(i);
+        }
+        return h^(h>>>16);
+    }
+
+    private static boolean equals(String name,CharSequence s,int start,int end){
+        if(name.length() != end-start) return false;
+        for(int i = 0;i<name.length();i++){
+            if(name.charAt(i) != s.charAt(start+i)) return false;
+        }
+        return true;
+    }
+}
@@ -19,4 +19,6 @@ public abstract class Token {
     public int getNumber(){throw new CopyStoneException("not number token");}
 
     public String getText(){return "";}
+
+    public int getSymbol(){return Symbols.NONE;}
 }
@@ -0,0 +1,275 @@
+package stone;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class TokenBuffer {
+    private CharSequence source;
+    private int[] kinds;
+    private int[] lines;
+    private int[] starts;
+    private int[] ends;
+    private int[] values;
+    private int size;
+    private int lineOffset;
+
+    public static final int INITIAL_CAPACITY = 256;
+
+    public TokenBuffer(CharSequence source){
+        this(source,INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(CharSequence source,int capacity){
+        this.source = source;
+        kinds = new int[capacity];
+        lines = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        values = new int[capacity];
+    }
+
+    public static TokenBuffer of(CharSequence source) throws ParseException{
+        TokenBuffer buffer = new TokenBuffer(source);
+        buffer.scan(0,source.length(),1);
+        return buffer;
+    }
+
+    public static TokenBuffer map(Path path) throws IOException,ParseException{
+        return map(path,StandardCharsets.UTF_8);
+    }
+
+    public static TokenBuffer map(Path path,Charset charset) throws IOException,ParseException{
+        return of(Lexer.decode(path,charset));
+    }
+
+    public void scan(int from,int to,int lineNo) throws ParseException{
+        Scanner s = new Scanner(source,from,to,lineNo);
+        for(int k;(k = s.next()) != Scanner.EOF;){
+            add(k,s.line(),s.start(),s.end(),k == Scanner.NUM ? s.number() : s.symbol());
+        }
+        if(s.midLine()){
+            add(Scanner.EOL,s.lineNumber(),to,to,Symbols.EOL);
+        }
+    }
+
+    public void add(int kind,int line,int start,int end,int value){
+        if(size == kinds.length){
+            reserve(Math.max(INITIAL_CAPACITY,size*2));
+        }
+        kinds[size] = kind;
+        lines[size] = line-lineOffset;
+        starts[size] = start;
+        ends[size] = end;
+        values[size] = value;
+        size++;
+    }
+
+    public void append(TokenBuffer b){
+        if(b.source != source) throw new CopyStoneException("tokens of another source");
+        if(size+b.size > kinds.length){
+            reserve(size+b.size);
+        }
+        System.arraycopy(b.kinds,0,kinds,size,b.size);
+        System.arraycopy(b.lines,0,lines,size,b.size);
+        if(b.lineOffset != lineOffset){
+            for(int i = size;i<size+b.size;i++){
+                lines[i] += b.lineOffset-lineOffset;
+            }
+        }
+        System.arraycopy(b.starts,0,starts,size,b.size);
+        System.arraycopy(b.ends,0,ends,size,b.size);
+        System.arraycopy(b.values,0,values,size,b.size);
+        size += b.size;
+    }
+
+    public void truncate(int n){
+        size = Math.min(size,n);
+    }
+
+    public void rebase(CharSequence source,int from){
+        for(int i = 0;i<size;i++){
+            starts[i] -= from;
+            ends[i] -= from;
+        }
+        this.source = source;
+    }
+
+    public void shiftLines(int delta){
+        lineOffset += delta;
+    }
+
+    public TokenBuffer trim(){
+        if(size < kinds.length){
+            reserve(size);
+        }
+        return this;
+    }
+
+    private void reserve(int n){
+        kinds = Arrays.copyOf(kinds,n);
+        lines = Arrays.copyOf(lines,n);
+        starts = Arrays.copyOf(starts,n);
+        ends = Arrays.copyOf(ends,n);
+        values = Arrays.copyOf(values,n);
+    }
+
+    public CharSequence source(){return source;}
+
+    public int size(){return size;}
+
+    public int kind(int i){return kinds[i];}
+
+    public int line(int i){return lines[i]+lineOffset;}
+
+    public int start(int i){return starts[i];}
+
+    public int end(int i){return ends[i];}
+
+    public int number(int i){
+        if(kinds[i] != Scanner.NUM) throw new CopyStoneException("not number token");
+        return values[i];
+    }
+
+    public int symbol(int i){
+        int k = kinds[i];
+        return k == Scanner.ID || k == Scanner.EOL ? values[i] : Symbols.NONE;
+    }
+
+    public CharSequence text(int i){
+        return new Slice(source,starts[i],ends[i]);
+    }
+
+    public Token token(int i){
+        return i < size ? new BufferToken(this,i) : Token.EOF;
+    }
+
+    public Lexer lexer(){
+        return new Cursor(this);
+    }
+
+    public static class Cursor extends Lexer{
+        private TokenBuffer buffer;
+        private int index;
+        private int cached = -1;
+        private Token current;
+
+        public Cursor(TokenBuffer buffer){
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Token read() {
+            Token t = peek(0);
+            if(index < buffer.size) index++;
+            return t;
+        }
+
+        @Override
+        public Token peek(int i) {
+            int k = index+i;
+            if(k >= buffer.size) return Token.EOF;
+            if(k != cached){
+                current = buffer.token(k);
+                cached = k;
+            }
+            return current;
+        }
+
+        public int index(){return index;}
+
+        public void seek(int i){index = i;}
+
+        public TokenBuffer buffer(){return buffer;}
+    }
+
+    protected static class BufferToken extends Token{
+        private TokenBuffer buffer;
+        private int index;
+
+        protected BufferToken(TokenBuffer buffer,int index) {
+            super(buffer.lines[index]);
+            this.buffer = buffer;
+            this.index = index;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return buffer.line(index);
+        }
+
+        @Override
+        public boolean isIdF() {
+            int k = buffer.kinds[index];
+            return k == Scanner.ID || k == Scanner.EOL;
+        }
+
+        @Override
+        public boolean isNumber() {
+            return buffer.kinds[index] == Scanner.NUM;
+        }
+
+        @Override
+        public boolean isString() {
+            return buffer.kinds[index] == Scanner.STR;
+        }
+
+        @Override
+        public int getNumber() {
+            return buffer.number(index);
+        }
+
+        @Override
+        public int getSymbol() {
+            return buffer.symbol(index);
+        }
+
+        @Override
+        public String getText() {
+            switch (buffer.kinds[index]){
+                case Scanner.NUM:
+                    return Integer.toString(buffer.values[index]);
+                case Scanner.STR:
+                    return Scanner.stringValue(buffer.source,buffer.starts[index],buffer.ends[index]);
+                default:
+                    int symbol = buffer.values[index];
+                    return symbol >= 0 ? Symbols.name(symbol)
+                            : buffer.source.subSequence(buffer.starts[index],buffer.ends[index]).toString();
+            }
+        }
+    }
+
+    protected static class Slice implements CharSequence{
+        private CharSequence src;
+        private int start;
+        private int end;
+
+        protected Slice(CharSequence src,int start,int end){
+            this.src = src;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end-start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return src.charAt(start+index);
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            return new Slice(src,start+s,start+e);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length()).append(src,start,end).toString();
+        }
+    }
+}
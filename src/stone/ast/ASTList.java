@@ -1,46 +1,64 @@
 package stone.ast;
 
 import javax.rmi.PortableRemoteObject;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public class ASTList extends ASTree{
-    protected List<ASTree> children;
+    private static final ASTree[] EMPTY = new ASTree[0];
+    protected static final List<ASTree> FIXED = Collections.emptyList();
+    protected ASTree[] children;
 
     public ASTList(List<ASTree> list){
-        children = list;
+        children = list.isEmpty() ? EMPTY : list.toArray(new ASTree[list.size()]);
     }
+
     @Override
     public ASTree child(int i) {
-        return children.get(i);
+        return children[i];
     }
 
     @Override
     public int numChildren() {
-        return children.size();
+        return children.length;
     }
 
     @Override
     public Iterator<ASTree> children() {
-        return children.iterator();
+        return new Iterator<ASTree>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < numChildren();
+            }
+
+            @Override
+            public ASTree next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return child(i++);
+            }
+        };
     }
 
     public String toString(){
         StringBuilder sb = new StringBuilder();
         sb.append('(');
         String sep = "";
-        for(ASTree t:children){
+        for(int i = 0;i<numChildren();i++){
             sb.append(sep);
             sep = " ";
-            sb.append(t.toString());
+            sb.append(child(i).toString());
         }
         return sb.append(')').toString();
     }
 
     @Override
     public String location() {
-        for(ASTree t:children){
-            String s = t.location();
+        for(int i = 0;i<numChildren();i++){
+            String s = child(i).location();
             if(s != null){
                 return s;
             }
@@ -3,10 +3,33 @@ package stone.ast;
 import java.util.List;
 
 public class BinaryExpr extends ASTList {
-    public BinaryExpr(List<ASTree> c) { super(c); }
-    public ASTree left() { return child(0); }
+    private final ASTree left;
+    private final ASTLeaf operator;
+    private final ASTree right;
+
+    public BinaryExpr(List<ASTree> c) {
+        super(FIXED);
+        left = c.get(0);
+        operator = (ASTLeaf)c.get(1);
+        right = c.get(2);
+    }
+    @Override
+    public ASTree child(int i) {
+        switch (i) {
+            case 0: return left;
+            case 1: return operator;
+            case 2: return right;
+            default: throw new IndexOutOfBoundsException("Index: "+i);
+        }
+    }
+    @Override
+    public int numChildren() { return 3; }
+    public ASTree left() { return left; }
     public String operator() {
-        return ((ASTLeaf)child(1)).token().getText();
+        return operator.token().getText();
+    }
+    public int operatorId() {
+        return operator.token().getSymbol();
     }
-    public ASTree right() { return child(2); }
+    public ASTree right() { return right; }
 }
@@ -0,0 +1,293 @@
+package stone.ast;
+
+import stone.BasicPaser;
+import stone.Lexer;
+import stone.ParseException;
+import stone.StoneException;
+import stone.Symbols;
+import stone.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class FlatTree {
+    public static final int LIST = 0;
+    public static final int LEAF = 1;
+    public static final int NUMBER = 2;
+    public static final int STRING = 3;
+    public static final int NAME = 4;
+    public static final int BINARY = 5;
+    public static final int NEGATIVE = 6;
+    public static final int BLOCK = 7;
+    public static final int IF = 8;
+    public static final int WHILE = 9;
+    public static final int PRIMARY = 10;
+    public static final int NULL = 11;
+
+    private int[] kinds;
+    private int[] firsts;
+    private int[] nexts;
+    private int[] payloads;
+    private int[] lines;
+    private int size;
+    private int[] roots = new int[16];
+    private int rootCount;
+    private ArrayList<String> strings = new ArrayList<>();
+
+    public FlatTree(){
+        this(256);
+    }
+
+    public FlatTree(int capacity){
+        capacity = Math.max(capacity,16);
+        kinds = new int[capacity];
+        firsts = new int[capacity];
+        nexts = new int[capacity];
+        payloads = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    public static FlatTree parse(BasicPaser bp,Lexer lexer) throws ParseException{
+        FlatTree flat = new FlatTree();
+        while (lexer.peek(0) != Token.EOF){
+            flat.add(bp.parse(lexer));
+        }
+        return flat.trim();
+    }
+
+    public int add(ASTree tree){
+        int root = size;
+        ArrayList<ASTree> todo = new ArrayList<>();
+        int[] parents = new int[16];
+        int[] last = new int[16];
+        todo.add(tree);
+        parents[0] = -1;
+        while (!todo.isEmpty()){
+            int top = todo.size()-1;
+            ASTree t = todo.remove(top);
+            int parent = parents[top];
+            int n = node(t);
+            if(parent >= 0){
+                if(firsts[parent] < 0) firsts[parent] = n;
+                else nexts[last[parent-root]] = n;
+                last[parent-root] = n;
+            }
+            int count = t instanceof ASTLeaf ? 0 : t.numChildren();
+            if(n-root >= last.length){
+                last = Arrays.copyOf(last,last.length*2);
+            }
+            if(todo.size()+count > parents.length){
+                parents = Arrays.copyOf(parents,Math.max(parents.length*2,todo.size()+count));
+            }
+            for(int i = count-1;i>=0;i--){
+                parents[todo.size()] = n;
+                todo.add(t.child(i));
+            }
+        }
+        if(rootCount == roots.length){
+            roots = Arrays.copyOf(roots,Math.max(rootCount*2,16));
+        }
+        roots[rootCount++] = root;
+        return root;
+    }
+
+    private int node(ASTree t){
+        if(size == kinds.length){
+            int n = Math.max(size*2,16);
+            kinds = Arrays.copyOf(kinds,n);
+            firsts = Arrays.copyOf(firsts,n);
+            nexts = Arrays.copyOf(nexts,n);
+            payloads = Arrays.copyOf(payloads,n);
+            lines = Arrays.copyOf(lines,n);
+        }
+        int n = size++;
+        firsts[n] = -1;
+        nexts[n] = -1;
+        if(t instanceof ASTLeaf){
+            Token token = ((ASTLeaf)t).token();
+            lines[n] = token.getLineNumber();
+            if(t instanceof NumberLiteral){
+                kinds[n] = NUMBER;
+                payloads[n] = token.getNumber();
+            } else if(t instanceof StringLiteral){
+                kinds[n] = STRING;
+                payloads[n] = strings.size();
+                strings.add(token.getText());
+            } else if(token.isIdF()){
+                kinds[n] = t instanceof Name ? NAME : LEAF;
+                payloads[n] = token.getSymbol();
+                if(payloads[n] < 0){
+                    payloads[n] = -2-strings.size();
+                    strings.add(token.getText());
+                }
+            } else {
+                throw new StoneException("cannot flatten "+t.getClass().getName(),t);
+            }
+        } else {
+            kinds[n] = t instanceof BinaryExpr ? BINARY
+                    : t instanceof NegativeExpr ? NEGATIVE
+                    : t instanceof BlockStmnt ? BLOCK
+                    : t instanceof IfStmnt ? IF
+                    : t instanceof WhileStmnt ? WHILE
+                    : t instanceof PrimaryExpr ? PRIMARY
+                    : t instanceof NullStmnt ? NULL
+                    : t.getClass() == ASTList.class ? LIST : -1;
+            if(kinds[n] < 0){
+                throw new StoneException("cannot flatten "+t.getClass().getName());
+            }
+            payloads[n] = t.numChildren();
+        }
+        return n;
+    }
+
+    public FlatTree trim(){
+        kinds = Arrays.copyOf(kinds,size);
+        firsts = Arrays.copyOf(firsts,size);
+        nexts = Arrays.copyOf(nexts,size);
+        payloads = Arrays.copyOf(payloads,size);
+        lines = Arrays.copyOf(lines,size);
+        roots = Arrays.copyOf(roots,rootCount);
+        strings.trimToSize();
+        return this;
+    }
+
+    public int size(){return size;}
+
+    public int statements(){return rootCount;}
+
+    public int statement(int i){return roots[i];}
+
+    public int kind(int n){return kinds[n];}
+
+    public int first(int n){return firsts[n];}
+
+    public int next(int n){return nexts[n];}
+
+    public int payload(int n){return payloads[n];}
+
+    public int line(int n){return lines[n];}
+
+    public int numChildren(int n){
+        return kinds[n] >= BINARY || kinds[n] == LIST ? payloads[n] : 0;
+    }
+
+    public int child(int n,int i){
+        if(i < 0 || i >= numChildren(n)) throw new IndexOutOfBoundsException("Index: "+i);
+        int c = firsts[n];
+        while (i-- > 0) c = nexts[c];
+        return c;
+    }
+
+    public int number(int n){return payloads[n];}
+
+    public String string(int n){return strings.get(payloads[n]);}
+
+    public String name(int n){
+        int p = payloads[n];
+        return p >= 0 ? Symbols.name(p) : strings.get(-2-p);
+    }
+
+    public String text(int n){
+        switch (kinds[n]){
+            case NUMBER: return Integer.toString(payloads[n]);
+            case STRING: return string(n);
+            case NAME: case LEAF: return name(n);
+            default: return null;
+        }
+    }
+
+    public String location(int n){
+        if(numChildren(n) == 0){
+            return kinds[n] == LEAF || kinds[n] == NUMBER || kinds[n] == STRING || kinds[n] == NAME
+                    ? "at line "+lines[n] : null;
+        }
+        for(int c = firsts[n];c >= 0;c = nexts[c]){
+            String s = location(c);
+            if(s != null) return s;
+        }
+        return null;
+    }
+
+    public ASTree view(int n){
+        return new Node(this,n);
+    }
+
+    public static class Node extends ASTree{
+        private final FlatTree tree;
+        private final int index;
+
+        protected Node(FlatTree tree,int index){
+            this.tree = tree;
+            this.index = index;
+        }
+
+        public FlatTree tree(){return tree;}
+
+        public int index(){return index;}
+
+        public int kind(){return tree.kind(index);}
+
+        @Override
+        public ASTree child(int i) {
+            return new Node(tree,tree.child(index,i));
+        }
+
+        @Override
+        public int numChildren() {
+            return tree.numChildren(index);
+        }
+
+        @Override
+        public Iterator<ASTree> children() {
+            return new Iterator<ASTree>() {
+                private int c = tree.first(index);
+
+                @Override
+                public boolean hasNext() {
+                    return c >= 0;
+                }
+
+                @Override
+                public ASTree next() {
+                    if(c < 0) throw new NoSuchElementException();
+                    Node n = new Node(tree,c);
+                    c = tree.next(c);
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public String location() {
+            return tree.location(index);
+        }
+
+        @Override
+        public Iterator<ASTree> iterator() {
+            return children();
+        }
+
+        public String toString(){
+            switch (kind()){
+                case NUMBER: case STRING: case NAME: case LEAF:
+                    return tree.text(index);
+                case NEGATIVE:
+                    return "-"+child(0);
+                case IF:
+                    return "(if "+child(0)+" "+child(1)+" else "+(numChildren() > 2 ? child(2) : null)+")";
+                case WHILE:
+                    return "(while "+child(0)+" "+child(1)+")";
+                default:
+                    StringBuilder sb = new StringBuilder("(");
+                    String sep = "";
+                    for(ASTree t:this){
+                        sb.append(sep).append(t);
+                        sep = " ";
+                    }
+                    return sb.append(')').toString();
+            }
+        }
+    }
+}
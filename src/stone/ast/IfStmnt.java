@@ -3,12 +3,30 @@ package stone.ast;
 import java.util.List;
 
 public class IfStmnt extends ASTList {
-    public IfStmnt(List<ASTree> c) { super(c); }
-    public ASTree condition() { return child(0); }
-    public ASTree thenBlock() { return child(1); }
-    public ASTree elseBlock() {
-        return numChildren() > 2 ? child(2) : null;
+    private final ASTree condition;
+    private final ASTree thenBlock;
+    private final ASTree elseBlock;
+
+    public IfStmnt(List<ASTree> c) {
+        super(FIXED);
+        condition = c.get(0);
+        thenBlock = c.get(1);
+        elseBlock = c.size() > 2 ? c.get(2) : null;
+    }
+    @Override
+    public ASTree child(int i) {
+        switch (i) {
+            case 0: return condition;
+            case 1: return thenBlock;
+            case 2: if(elseBlock != null) return elseBlock;
+        }
+        throw new IndexOutOfBoundsException("Index: "+i);
     }
+    @Override
+    public int numChildren() { return elseBlock == null ? 2 : 3; }
+    public ASTree condition() { return condition; }
+    public ASTree thenBlock() { return thenBlock; }
+    public ASTree elseBlock() { return elseBlock; }
     public String toString() {
         return "(if " + condition() + " " + thenBlock()
                  + " else " + elseBlock() + ")";
@@ -3,11 +3,23 @@ package stone.ast;
 import java.util.List;
 
 public class NegativeExpr extends ASTList{
+    private final ASTree operand;
+
     public NegativeExpr(List<ASTree> list) {
-        super(list);
+        super(FIXED);
+        operand = list.get(0);
+    }
+    @Override
+    public ASTree child(int i) {
+        if(i != 0) throw new IndexOutOfBoundsException("Index: "+i);
+        return operand;
+    }
+    @Override
+    public int numChildren() {
+        return 1;
     }
     public ASTree operand(){
-        return child(0);
+        return operand;
     }
 
     public String toString(){
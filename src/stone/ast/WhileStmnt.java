@@ -3,9 +3,26 @@ package stone.ast;
 import java.util.List;
 
 public class WhileStmnt extends ASTList {
-    public WhileStmnt(List<ASTree> c) { super(c); }
-    public ASTree condition() { return child(0); }
-    public ASTree body() { return child(1); }
+    private final ASTree condition;
+    private final ASTree body;
+
+    public WhileStmnt(List<ASTree> c) {
+        super(FIXED);
+        condition = c.get(0);
+        body = c.get(1);
+    }
+    @Override
+    public ASTree child(int i) {
+        switch (i) {
+            case 0: return condition;
+            case 1: return body;
+            default: throw new IndexOutOfBoundsException("Index: "+i);
+        }
+    }
+    @Override
+    public int numChildren() { return 2; }
+    public ASTree condition() { return condition; }
+    public ASTree body() { return body; }
     public String toString() {
         return "(while " + condition() + " " + body() + ")";
     }
@@ -5,17 +5,19 @@ import stone.Lexer;
 import stone.ParseException;
 import stone.Token;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 public class FileLexerRunner {
 
     public static void main(String[] args)throws ParseException {
         try {
-            Lexer l = new Lexer(CodeDialog.file());
+            Lexer l = args.length > 0 ? Lexer.map(Paths.get(args[0]))
+                    : new Lexer(CodeDialog.file());
             for(Token t;(t = l.read())!=Token.EOF;){
                 System.out.println("  ->  "+t.getText());
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
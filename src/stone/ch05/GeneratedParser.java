@@ -0,0 +1,325 @@
+package stone.ch05;
+
+import stone.*;
+import stone.ast.ASTLeaf;
+import stone.ast.ASTList;
+import stone.ast.ASTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class GeneratedParser {
+    private static final int S0 = Symbols.intern("\n");
+    private static final int S1 = Symbols.intern(";");
+    private static final int S2 = Symbols.intern("}");
+    private static final int S3 = Symbols.intern("if");
+    private static final int S4 = Symbols.intern("while");
+    private static final int S5 = Symbols.intern("%");
+    private static final int S6 = Symbols.intern("*");
+    private static final int S7 = Symbols.intern("+");
+    private static final int S8 = Symbols.intern("-");
+    private static final int S9 = Symbols.intern("/");
+    private static final int S10 = Symbols.intern("<");
+    private static final int S11 = Symbols.intern("=");
+    private static final int S12 = Symbols.intern("==");
+    private static final int S13 = Symbols.intern(">");
+    private static final int S14 = Symbols.intern("{");
+    private static final int S15 = Symbols.intern("else");
+    private static final int S16 = Symbols.intern("(");
+    private static final int S17 = Symbols.intern(")");
+
+    public ASTree parse(Lexer lexer) throws ParseException{
+        return rule0(lexer);
+    }
+
+    private static ASTree rule0(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(2);
+        Token t1 = lexer.peek(0);
+        int alt1;
+        if(t1.isIdF()){
+            if(t1.getSymbol() == S0 || t1.getSymbol() == S1 || t1.getSymbol() == S2) alt1 = 1;
+            else alt1 = 0;
+        } else if(t1.isNumber()){
+            alt1 = 0;
+        } else if(t1.isString()){
+            alt1 = 0;
+        } else {
+            alt1 = 1;
+        }
+        switch (alt1){
+            case 0: res.add(rule1(lexer)); break;
+            case 1: res.add(rule2(lexer)); break;
+            default: throw new ParseException(t1);
+        }
+        Token t2 = lexer.read();
+        if(!t2.isIdF() || t2.getSymbol() != S1 && t2.getSymbol() != S0)
+            throw new ParseException(";expected ",t2);
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule1(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        Token t1 = lexer.peek(0);
+        int alt1;
+        if(t1.isIdF()){
+            if(t1.getSymbol() == S0 || t1.getSymbol() == S1 || t1.getSymbol() == S2) alt1 = -1;
+            else if(t1.getSymbol() == S3) alt1 = 0;
+            else if(t1.getSymbol() == S4) alt1 = 1;
+            else alt1 = 2;
+        } else if(t1.isNumber()){
+            alt1 = 2;
+        } else if(t1.isString()){
+            alt1 = 2;
+        } else {
+            alt1 = -1;
+        }
+        switch (alt1){
+            case 0: res.add(rule3(lexer)); break;
+            case 1: res.add(rule4(lexer)); break;
+            case 2: res.add(rule5(lexer)); break;
+            default: throw new ParseException(t1);
+        }
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule2(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(0);
+        return new stone.ast.NullStmnt(res);
+    }
+
+    private static ASTree rule3(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(4);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S3)
+            throw new ParseException("ifexpected ",t1);
+        res.add(rule6(lexer));
+        res.add(rule7(lexer));
+        if(match0(lexer)){
+            ASTree t4 = rule8(lexer);
+            if(t4.getClass() != ASTList.class || t4.numChildren() > 0) res.add(t4);
+        }
+        return new stone.ast.IfStmnt(res);
+    }
+
+    private static ASTree rule4(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(3);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S4)
+            throw new ParseException("whileexpected ",t1);
+        res.add(rule6(lexer));
+        res.add(rule7(lexer));
+        return new stone.ast.WhileStmnt(res);
+    }
+
+    private static ASTree rule5(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        res.add(rule6(lexer));
+        return stone.ast.PrimaryExpr.create(res);
+    }
+
+    private static ASTree rule6(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        res.add(expr0(lexer));
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule7(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(4);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S14)
+            throw new ParseException("{expected ",t1);
+        if(match1(lexer)){
+            ASTree t2 = rule1(lexer);
+            if(t2.getClass() != ASTList.class || t2.numChildren() > 0) res.add(t2);
+        }
+        while (match2(lexer)){
+            ASTree t3 = rule10(lexer);
+            if(t3.getClass() != ASTList.class || t3.numChildren() > 0) res.add(t3);
+        }
+        Token t4 = lexer.read();
+        if(!t4.isIdF() || t4.getSymbol() != S2)
+            throw new ParseException("}expected ",t4);
+        return new stone.ast.BlockStmnt(res);
+    }
+
+    private static ASTree rule8(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(2);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S15)
+            throw new ParseException("elseexpected ",t1);
+        res.add(rule7(lexer));
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule9(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        Token t1 = lexer.peek(0);
+        int alt1;
+        if(t1.isIdF()){
+            if(t1.getSymbol() == S0 || t1.getSymbol() == S1 || t1.getSymbol() == S2) alt1 = -1;
+            else if(t1.getSymbol() == S8) alt1 = 0;
+            else alt1 = 1;
+        } else if(t1.isNumber()){
+            alt1 = 1;
+        } else if(t1.isString()){
+            alt1 = 1;
+        } else {
+            alt1 = -1;
+        }
+        switch (alt1){
+            case 0: res.add(rule11(lexer)); break;
+            case 1: res.add(rule12(lexer)); break;
+            default: throw new ParseException(t1);
+        }
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule10(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(2);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S1 && t1.getSymbol() != S0)
+            throw new ParseException(";expected ",t1);
+        if(match1(lexer)){
+            ASTree t2 = rule1(lexer);
+            if(t2.getClass() != ASTList.class || t2.numChildren() > 0) res.add(t2);
+        }
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule11(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(2);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S8)
+            throw new ParseException("-expected ",t1);
+        res.add(rule12(lexer));
+        return new stone.ast.NegativeExpr(res);
+    }
+
+    private static ASTree rule12(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        Token t1 = lexer.peek(0);
+        int alt1;
+        if(t1.isIdF()){
+            if(t1.getSymbol() == S0 || t1.getSymbol() == S1 || t1.getSymbol() == S2) alt1 = -1;
+            else if(t1.getSymbol() == S16) alt1 = 0;
+            else alt1 = 2;
+        } else if(t1.isNumber()){
+            alt1 = 1;
+        } else if(t1.isString()){
+            alt1 = 3;
+        } else {
+            alt1 = -1;
+        }
+        switch (alt1){
+            case 0: res.add(rule13(lexer)); break;
+            case 1: res.add(rule14(lexer)); break;
+            case 2: res.add(rule15(lexer)); break;
+            case 3: res.add(rule16(lexer)); break;
+            default: throw new ParseException(t1);
+        }
+        return stone.ast.PrimaryExpr.create(res);
+    }
+
+    private static ASTree rule13(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(3);
+        Token t1 = lexer.read();
+        if(!t1.isIdF() || t1.getSymbol() != S16)
+            throw new ParseException("(expected ",t1);
+        res.add(rule6(lexer));
+        Token t3 = lexer.read();
+        if(!t3.isIdF() || t3.getSymbol() != S17)
+            throw new ParseException(")expected ",t3);
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule14(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        Token t1 = lexer.read();
+        if(!(t1.isNumber())) throw new ParseException(t1);
+        res.add(new stone.ast.NumberLiteral(t1));
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule15(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        Token t1 = lexer.read();
+        if(!(t1.isIdF() && t1.getSymbol() != S0 && t1.getSymbol() != S1 && t1.getSymbol() != S2)) throw new ParseException(t1);
+        res.add(new stone.ast.Name(t1));
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static ASTree rule16(Lexer lexer) throws ParseException{
+        ArrayList<ASTree> res = new ArrayList<>(1);
+        Token t1 = lexer.read();
+        if(!(t1.isString())) throw new ParseException(t1);
+        res.add(new stone.ast.StringLiteral(t1));
+        return res.size() == 1 ? res.get(0) : new ASTList(res);
+    }
+
+    private static boolean match0(Lexer lexer) throws ParseException{
+        Token t = lexer.peek(0);
+        if(t.isIdF()) return t.getSymbol() == S15;
+        return false;
+    }
+
+    private static boolean match1(Lexer lexer) throws ParseException{
+        Token t = lexer.peek(0);
+        if(t.isIdF()) return t.getSymbol() != S0 && t.getSymbol() != S1 && t.getSymbol() != S2;
+        return t.isNumber() || t.isString();
+    }
+
+    private static boolean match2(Lexer lexer) throws ParseException{
+        Token t = lexer.peek(0);
+        if(t.isIdF()) return t.getSymbol() == S0 || t.getSymbol() == S1;
+        return false;
+    }
+
+    private static ASTree expr0(Lexer lexer) throws ParseException{
+        ASTree right = rule9(lexer);
+        int next = operator0(lexer.peek(0));
+        if(next < 0) return right;
+        ASTree[] operands = new ASTree[8];
+        ASTree[] operators = new ASTree[8];
+        int[] precs = new int[8];
+        int top = 0;
+        do {
+            while (top > 0 && !rightIsExpr(precs[top-1],next)){
+                top--;
+                right = new stone.ast.BinaryExpr(Arrays.asList(operands[top],operators[top],right));
+            }
+            if(top == operands.length){
+                operands = Arrays.copyOf(operands,top*2);
+                operators = Arrays.copyOf(operators,top*2);
+                precs = Arrays.copyOf(precs,top*2);
+            }
+            operands[top] = right;
+            operators[top] = new ASTLeaf(lexer.read());
+            precs[top++] = next;
+            right = rule9(lexer);
+        } while ((next = operator0(lexer.peek(0))) >= 0);
+        while (top > 0){
+            top--;
+            right = new stone.ast.BinaryExpr(Arrays.asList(operands[top],operators[top],right));
+        }
+        return right;
+    }
+
+    private static int operator0(Token t){
+        if(!t.isIdF()) return -1;
+        int s = t.getSymbol();
+        if(s == S5) return 9;
+        if(s == S6) return 9;
+        if(s == S7) return 7;
+        if(s == S8) return 7;
+        if(s == S9) return 9;
+        if(s == S10) return 5;
+        if(s == S11) return 2;
+        if(s == S12) return 5;
+        if(s == S13) return 5;
+        return -1;
+    }
+
+    private static boolean rightIsExpr(int prec,int next){
+        return (next&1) != 0 ? prec>>1 < next>>1 : prec>>1 <= next>>1;
+    }
+}
@@ -0,0 +1,67 @@
+package stone.ch05;
+
+import stone.*;
+
+public class ParserBenchmark {
+    public static void main(String[] args) throws ParseException {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        TokenBuffer tokens = TokenBuffer.of(script(statements));
+        for(int i = 0;i<2;i++){
+            run("reflective",true,tokens,rounds);
+            run("generated ",false,tokens,rounds);
+            compiled(tokens,rounds);
+        }
+    }
+
+    static void run(String name,boolean reflective,TokenBuffer tokens,int rounds) throws ParseException{
+        Parser.reflectiveFactories = reflective;
+        BasicPaser bp = new BasicPaser();
+        Parser.reflectiveFactories = false;
+        long best = Long.MAX_VALUE;
+        int count = 0;
+        for(int r = 0;r<rounds;r++){
+            long start = System.nanoTime();
+            Lexer l = tokens.lexer();
+            count = 0;
+            while (l.peek(0) != Token.EOF){
+                bp.parse(l);
+                count++;
+            }
+            best = Math.min(best,System.nanoTime()-start);
+        }
+        System.out.printf("%s %8d statements  %8.1f ms  %10.0f statements/s%n",
+                name,count,best/1e6,count/(best/1e9));
+    }
+
+    static void compiled(TokenBuffer tokens,int rounds) throws ParseException{
+        GeneratedParser gp = new GeneratedParser();
+        long best = Long.MAX_VALUE;
+        int count = 0;
+        for(int r = 0;r<rounds;r++){
+            long start = System.nanoTime();
+            Lexer l = tokens.lexer();
+            count = 0;
+            while (l.peek(0) != Token.EOF){
+                gp.parse(l);
+                count++;
+            }
+            best = Math.min(best,System.nanoTime()-start);
+        }
+        System.out.printf("%s %8d statements  %8.1f ms  %10.0f statements/s%n",
+                "compiled  ",count,best/1e6,count/(best/1e9));
+    }
+
+    static String script(int statements){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0;i<statements;i++){
+            switch (i%4){
+                case 0: sb.append("x").append(i).append(" = (a + ").append(i).append(") * b - c / 2\n"); break;
+                case 1: sb.append("if x > ").append(i).append(" { y = \"s\" + x } else { y = -x }\n"); break;
+                case 2: sb.append("while i < ").append(i).append(" { i = i + 1; s = s + i % 7 }\n"); break;
+                default: sb.append("z = x == y\n");
+            }
+        }
+        return sb.toString();
+    }
+}
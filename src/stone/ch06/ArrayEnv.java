@@ -0,0 +1,69 @@
+package stone.ch06;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class ArrayEnv implements Environment {
+    private static final Object INT = new Object();
+    protected HashMap<String,Integer> slots;
+    protected Object[] values;
+    protected int[] ints;
+
+    public ArrayEnv(){
+        slots = new HashMap<String,Integer>();
+        values = new Object[16];
+        ints = new int[16];
+    }
+
+    public int slot(String name){
+        Integer i = slots.get(name);
+        if(i == null){
+            i = slots.size();
+            slots.put(name,i);
+            if(i == values.length){
+                values = Arrays.copyOf(values,i*2);
+                ints = Arrays.copyOf(ints,i*2);
+            }
+        }
+        return i;
+    }
+
+    public Object get(int slot){
+        Object v = values[slot];
+        return v == INT ? Integer.valueOf(ints[slot]) : v;
+    }
+
+    public boolean isInt(int slot){
+        Object v = values[slot];
+        return v == INT || v instanceof Integer;
+    }
+
+    public int getInt(int slot){
+        Object v = values[slot];
+        return v == INT ? ints[slot] : ((Integer)v).intValue();
+    }
+
+    public void putInt(int slot,int value){
+        values[slot] = INT;
+        ints[slot] = value;
+    }
+
+    public void put(int slot,Object value){
+        values[slot] = value;
+    }
+
+    @Override
+    public void put(String name, Object value) {
+        values[slot(name)] = value;
+    }
+
+    @Override
+    public Object get(String name) {
+        Integer i = slots.get(name);
+        return i == null ? null : get(i);
+    }
+
+    public int size(){
+        return slots.size();
+    }
+}
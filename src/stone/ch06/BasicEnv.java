@@ -3,18 +3,34 @@ package stone.ch06;
 import java.util.HashMap;
 
 public class BasicEnv implements Environment {
-    protected HashMap<String,Object> values;
+    private final HashMap<String,Cell> cells;
 
     public BasicEnv(){
-        values = new HashMap<String,Object>();
+        cells = new HashMap<String,Cell>();
     }
+
+    /** The cell holding a name's value, created empty on first use; a cell's value stays null until assigned. */
+    public Cell cell(String name){
+        Cell c = cells.get(name);
+        if(c == null){
+            c = new Cell();
+            cells.put(name,c);
+        }
+        return c;
+    }
+
     @Override
     public void put(String name, Object value) {
-        values.put(name,value);
+        cell(name).value = value;
     }
 
     @Override
     public Object get(String name) {
-        return values.get(name);
+        Cell c = cells.get(name);
+        return c == null ? null : c.value;
+    }
+
+    public static final class Cell {
+        public Object value;
     }
 }
@@ -2,6 +2,7 @@ package stone.ch06;
 
 import javassist.gluonj.Reviser;
 import stone.StoneException;
+import stone.Symbols;
 import stone.Token;
 import stone.ast.*;
 
@@ -13,6 +14,13 @@ import java.util.List;
     public static final int FALSE = 0;
     @Reviser public static abstract class ASTreeEx extends ASTree {
         public abstract Object eval(Environment env);
+        public int evalInt(Environment env) {
+            Object v = eval(env);
+            if (v instanceof Integer)
+                return ((Integer)v).intValue();
+            else
+                throw new NonIntValue(v);
+        }
     }
     @Reviser public static class ASTListEx extends ASTList {
         public ASTListEx(List<ASTree> c) { super(c); }
@@ -29,20 +37,67 @@ import java.util.List;
     @Reviser public static class NumberEx extends NumberLiteral {
         public NumberEx(Token t) { super(t); }
         public Object eval(Environment e) { return value(); }
+        public int evalInt(Environment e) { return value(); }
     }
     @Reviser public static class StringEx extends StringLiteral {
         public StringEx(Token t) { super(t); }
         public Object eval(Environment e) { return value(); }
     }
     @Reviser public static class NameEx extends Name {
+        protected Binding binding;
         public NameEx(Token t) { super(t); }
+        public void bind(ArrayEnv env, int slot) {
+            binding = new Binding(env, slot);
+        }
+        protected Binding binding(Environment env) {
+            Binding b = binding;
+            if (b != null && b.env == env)
+                return b;
+            else if (env.getClass() == ArrayEnv.class) {
+                ArrayEnv a = (ArrayEnv)env;
+                b = new Binding(a, a.slot(name()));
+            }
+            else if (env.getClass() == BasicEnv.class) {
+                BasicEnv e = (BasicEnv)env;
+                b = new Binding(e, e.cell(name()));
+            }
+            else
+                return null;    // a subclass may override get/put, so it is not cached
+            binding = b;
+            return b;
+        }
         public Object eval(Environment env) {
-            Object value = env.get(name());
+            Binding b = binding(env);
+            Object value = b != null ? b.get() : env.get(name());
             if (value == null)
                 throw new StoneException("undefined name: " + name(), this);
             else
                 return value;
         }
+        public int evalInt(Environment env) {
+            Binding b = binding(env);
+            if (b != null && b.isInt())
+                return b.getInt();
+            Object v = eval(env);
+            if (v instanceof Integer)
+                return ((Integer)v).intValue();
+            else
+                throw new NonIntValue(v);
+        }
+        public void assign(Environment env, Object value) {
+            Binding b = binding(env);
+            if (b != null)
+                b.put(value);
+            else
+                env.put(name(), value);
+        }
+        public void assignInt(Environment env, int value) {
+            Binding b = binding(env);
+            if (b != null)
+                b.putInt(value);
+            else
+                env.put(name(), value);
+        }
     }
     @Reviser public static class NegativeEx extends NegativeExpr {
         public NegativeEx(List<ASTree> c) { super(c); }
@@ -53,38 +108,127 @@ import java.util.List;
             else
                 throw new StoneException("bad type for -", this);
         }
+        public int evalInt(Environment env) {
+            try {
+                return -((ASTreeEx)operand()).evalInt(env);
+            } catch (NonIntValue e) {
+                throw new StoneException("bad type for -", this);
+            }
+        }
     }
     @Reviser public static class BinaryEx extends BinaryExpr {
+        protected static final int UNSPECIALIZED = 0;
+        protected static final int INT = 1;
+        protected static final int CONCAT = 2;
+        protected static final int GENERIC = 3;
+        protected int specialized = UNSPECIALIZED;
         public BinaryEx(List<ASTree> c) { super(c); }
         public Object eval(Environment env) {
-            String op = operator();
-            if ("=".equals(op)) {
+            int op = operatorId();
+            if (op == Symbols.ASSIGN) {
                 Object right = ((ASTreeEx)right()).eval(env);
                 return computeAssign(env, right);
             }
-            else {
-                Object left = ((ASTreeEx)left()).eval(env);
-                Object right = ((ASTreeEx)right()).eval(env);
-                return computeOp(left, op, right);
+            switch (specialized) {
+                case INT:
+                    try {
+                        return evalInt(env);
+                    } catch (NonIntValue e) {
+                        return e.value;
+                    }
+                case CONCAT: {
+                    Object left = ((ASTreeEx)left()).eval(env);
+                    Object right = ((ASTreeEx)right()).eval(env);
+                    if (left instanceof Integer && right instanceof Integer)
+                        return generic(left, op, right);
+                    else
+                        return String.valueOf(left) + String.valueOf(right);
+                }
+                default: {
+                    Object left = ((ASTreeEx)left()).eval(env);
+                    Object right = ((ASTreeEx)right()).eval(env);
+                    if (specialized == UNSPECIALIZED)
+                        specialize(left, op, right);
+                    return computeOp(left, op, right);
+                }
+            }
+        }
+        public int evalInt(Environment env) {
+            int op = operatorId();
+            if (op == Symbols.ASSIGN) {
+                int v;
+                try {
+                    v = ((ASTreeEx)right()).evalInt(env);
+                } catch (NonIntValue e) {
+                    computeAssign(env, e.value);
+                    throw e;
+                }
+                ASTree l = left();
+                if (l instanceof Name) {
+                    ((NameEx)l).assignInt(env, v);
+                    return v;
+                }
+                else
+                    throw new StoneException("bad assignment", this);
             }
+            if (specialized == CONCAT)
+                return toInt(eval(env));
+            int a;
+            try {
+                a = ((ASTreeEx)left()).evalInt(env);
+            } catch (NonIntValue e) {
+                return toInt(generic(e.value, op, ((ASTreeEx)right()).eval(env)));
+            }
+            int b;
+            try {
+                b = ((ASTreeEx)right()).evalInt(env);
+            } catch (NonIntValue e) {
+                return toInt(generic(a, op, e.value));
+            }
+            if (specialized == UNSPECIALIZED)
+                specialized = INT;
+            return computeInt(a, op, b);
+        }
+        /* The first operands seen pick a variant: INT evaluates its operands unboxed,
+           CONCAT is + on anything but two ints.  Any later mismatch ends in GENERIC for good. */
+        protected void specialize(Object left, int op, Object right) {
+            if (left instanceof Integer && right instanceof Integer)
+                specialized = INT;
+            else if (op == Symbols.PLUS)
+                specialized = CONCAT;
+            else
+                specialized = GENERIC;
+        }
+        protected Object generic(Object left, int op, Object right) {
+            if (specialized == UNSPECIALIZED)
+                specialize(left, op, right);
+            else
+                specialized = GENERIC;
+            return computeOp(left, op, right);
+        }
+        protected static int toInt(Object v) {
+            if (v instanceof Integer)
+                return ((Integer)v).intValue();
+            else
+                throw new NonIntValue(v);
         }
         protected Object computeAssign(Environment env, Object rvalue) {
             ASTree l = left();
             if (l instanceof Name) {
-                env.put(((Name)l).name(), rvalue);
+                ((NameEx)l).assign(env, rvalue);
                 return rvalue;
             }
             else
                 throw new StoneException("bad assignment", this);
         }
-        protected Object computeOp(Object left, String op, Object right) {
+        protected Object computeOp(Object left, int op, Object right) {
             if (left instanceof Integer && right instanceof Integer) {
                 return computeNumber((Integer)left, op, (Integer)right);
             }
             else
-            if (op.equals("+"))
+            if (op == Symbols.PLUS)
                 return String.valueOf(left) + String.valueOf(right);
-            else if (op.equals("==")) {
+            else if (op == Symbols.EQ) {
                 if (left == null)
                     return right == null ? TRUE : FALSE;
                 else
@@ -93,67 +237,133 @@ import java.util.List;
             else
                 throw new StoneException("bad type", this);
         }
-        protected Object computeNumber(Integer left, String op, Integer right) {
-            int a = left.intValue();
-            int b = right.intValue();
-            if (op.equals("+"))
-                return a + b;
-            else if (op.equals("-"))
-                return a - b;
-            else if (op.equals("*"))
-                return a * b;
-            else if (op.equals("/"))
-                return a / b;
-            else if (op.equals("%"))
-                return a % b;
-            else if (op.equals("=="))
-                return a == b ? TRUE : FALSE;
-            else if (op.equals(">"))
-                return a > b ? TRUE : FALSE;
-            else if (op.equals("<"))
-                return a < b ? TRUE : FALSE;
-            else
-                throw new StoneException("bad operator", this);
+        protected Object computeNumber(Integer left, int op, Integer right) {
+            return computeInt(left.intValue(), op, right.intValue());
+        }
+        protected int computeInt(int a, int op, int b) {
+            switch (op) {
+                case Symbols.PLUS: return a + b;
+                case Symbols.MINUS: return a - b;
+                case Symbols.TIMES: return a * b;
+                case Symbols.DIVIDE: return a / b;
+                case Symbols.MODULO: return a % b;
+                case Symbols.EQ: return a == b ? TRUE : FALSE;
+                case Symbols.GT: return a > b ? TRUE : FALSE;
+                case Symbols.LT: return a < b ? TRUE : FALSE;
+                default: throw new StoneException("bad operator", this);
+            }
         }
     }
     @Reviser public static class BlockEx extends BlockStmnt {
         public BlockEx(List<ASTree> c) { super(c); }
         public Object eval(Environment env) {
-            Object result = 0;
-            for (ASTree t: this) {
-                if (!(t instanceof NullStmnt))
-                    result = ((ASTreeEx)t).eval(env);
+            try {
+                return evalInt(env);
+            } catch (NonIntValue e) {
+                return e.value;
             }
+        }
+        public int evalInt(Environment env) {
+            int result = 0;
+            Object other = null;
+            for (int i = 0; i < numChildren(); i++) {
+                ASTree t = child(i);
+                if (!(t instanceof NullStmnt)) {
+                    try {
+                        result = ((ASTreeEx)t).evalInt(env);
+                        other = null;
+                    } catch (NonIntValue e) {
+                        other = e.value;
+                    }
+                }
+            }
+            if (other != null)
+                throw new NonIntValue(other);
             return result;
         }
     }
     @Reviser public static class IfEx extends IfStmnt {
         public IfEx(List<ASTree> c) { super(c); }
         public Object eval(Environment env) {
-            Object c = ((ASTreeEx)condition()).eval(env);
-            if (c instanceof Integer && ((Integer)c).intValue() != FALSE)
-                return ((ASTreeEx)thenBlock()).eval(env);
+            try {
+                return evalInt(env);
+            } catch (NonIntValue e) {
+                return e.value;
+            }
+        }
+        public int evalInt(Environment env) {
+            boolean c;
+            try {
+                c = ((ASTreeEx)condition()).evalInt(env) != FALSE;
+            } catch (NonIntValue e) {
+                c = false;
+            }
+            if (c)
+                return ((ASTreeEx)thenBlock()).evalInt(env);
             else {
                 ASTree b = elseBlock();
                 if (b == null)
                     return 0;
                 else
-                    return ((ASTreeEx)b).eval(env);
+                    return ((ASTreeEx)b).evalInt(env);
             }
         }
     }
     @Reviser public static class WhileEx extends WhileStmnt {
+        protected int iterations;
+        protected CompiledLoop compiled;
         public WhileEx(List<ASTree> c) { super(c); }
+        public int iterations() { return iterations; }
+        public boolean isCompiled() { return compiled != null; }
         public Object eval(Environment env) {
-            Object result = 0;
+            try {
+                return evalInt(env);
+            } catch (NonIntValue e) {
+                return e.value;
+            }
+        }
+        public int evalInt(Environment env) {
+            if (compiled != null) {
+                Object r = LoopTier.resume(this, compiled, env, CompiledRuntime.ZERO);
+                if (r != CompiledRuntime.DEOPT)
+                    return unbox(r);
+            }
+            int result = 0;
+            Object other = null;
             for (;;) {
-                Object c = ((ASTreeEx)condition()).eval(env);
-                if (c instanceof Integer && ((Integer)c).intValue() == FALSE)
+                boolean done;
+                try {
+                    done = ((ASTreeEx)condition()).evalInt(env) == FALSE;
+                } catch (NonIntValue e) {
+                    done = false;
+                }
+                if (done) {
+                    if (other != null)
+                        throw new NonIntValue(other);
                     return result;
-                else
-                    result = ((ASTreeEx)body()).eval(env);
+                }
+                try {
+                    result = ((ASTreeEx)body()).evalInt(env);
+                    other = null;
+                } catch (NonIntValue e) {
+                    other = e.value;
+                }
+                int threshold = LoopTier.threshold();
+                if (compiled == null && threshold >= 0 && ++iterations >= threshold) {
+                    compiled = LoopTier.compile(this, iterations);
+                    Object r = LoopTier.resume(this, compiled, env,
+                                               other != null ? other : Integer.valueOf(result));
+                    if (r != CompiledRuntime.DEOPT)
+                        return unbox(r);
+                }
             }
         }
+        protected int unbox(Object r) {
+            if (r instanceof Integer)
+                return ((Integer)r).intValue();
+            else
+                throw new NonIntValue(r);
+        }
     }
 
 }
@@ -6,15 +6,17 @@ import stone.ast.NullStmnt;
 
 public class BasicInterpreter {
     public static void main(String[] args) throws ParseException{
-        run(new BasicPaser(),new BasicEnv());
+        run(new BasicPaser(),new ArrayEnv());
     }
 
     public static void run(BasicPaser bp,Environment env)throws ParseException{
         Lexer lexer = new Lexer(new CodeDialog());
         while (lexer.peek(0) != Token.EOF){
-            ASTree t = bp.parse(lexer);
+            ASTree t = Optimizer.optimize(bp.parse(lexer));
             if(!(t instanceof NullStmnt)){
-//                Object r =
+                if(env instanceof ArrayEnv) Resolver.resolve(t,(ArrayEnv)env);
+                Object r = ((BasicEvaluator.ASTreeEx)t).eval(env);
+                System.out.println("=> "+r);
             }
         }
     }
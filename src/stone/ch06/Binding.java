@@ -0,0 +1,48 @@
+package stone.ch06;
+
+/**
+ * Where a name lives in one environment: a slot of an ArrayEnv or a cell of a BasicEnv.
+ * Immutable, so a name node publishes its binding with a single write.
+ */
+public final class Binding {
+    public final Environment env;
+    private final ArrayEnv array;
+    private final int slot;
+    private final BasicEnv.Cell cell;
+
+    public Binding(ArrayEnv env,int slot){
+        this.env = env;
+        this.array = env;
+        this.slot = slot;
+        this.cell = null;
+    }
+
+    public Binding(BasicEnv env,BasicEnv.Cell cell){
+        this.env = env;
+        this.array = null;
+        this.slot = -1;
+        this.cell = cell;
+    }
+
+    public Object get(){
+        return cell != null ? cell.value : array.get(slot);
+    }
+
+    public boolean isInt(){
+        return cell != null ? cell.value instanceof Integer : array.isInt(slot);
+    }
+
+    public int getInt(){
+        return cell != null ? ((Integer)cell.value).intValue() : array.getInt(slot);
+    }
+
+    public void put(Object value){
+        if(cell != null) cell.value = value;
+        else array.put(slot,value);
+    }
+
+    public void putInt(int value){
+        if(cell != null) cell.value = value;
+        else array.putInt(slot,value);
+    }
+}
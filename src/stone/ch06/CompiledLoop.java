@@ -0,0 +1,5 @@
+package stone.ch06;
+
+public interface CompiledLoop {
+    Object resume(Environment env,Object result);
+}
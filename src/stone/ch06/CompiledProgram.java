@@ -0,0 +1,6 @@
+package stone.ch06;
+
+public interface CompiledProgram {
+    int statements();
+    Object eval(int i,Environment env);
+}
@@ -0,0 +1,75 @@
+package stone.ch06;
+
+import stone.StoneException;
+import stone.Symbols;
+
+import static stone.ch06.BasicEvaluator.FALSE;
+import static stone.ch06.BasicEvaluator.TRUE;
+
+public class CompiledRuntime {
+    public static final Integer ZERO = 0;
+    public static final Object DEOPT = new Object();
+
+    public static Object get(Environment env,String name,String where){
+        Object value = env.get(name);
+        if(value == null)
+            throw new StoneException("undefined name: "+name+" "+where);
+        return value;
+    }
+
+    public static Object assign(Environment env,String name,Object value){
+        env.put(name,value);
+        return value;
+    }
+
+    public static Object negate(Object v,String where){
+        if(v instanceof Integer)
+            return Integer.valueOf(-((Integer)v).intValue());
+        throw new StoneException("bad type for - "+where);
+    }
+
+    public static Object binary(Object left,int op,Object right,String where){
+        if(left instanceof Integer && right instanceof Integer){
+            int a = ((Integer)left).intValue();
+            int b = ((Integer)right).intValue();
+            switch (op){
+                case Symbols.PLUS: return Integer.valueOf(a + b);
+                case Symbols.MINUS: return Integer.valueOf(a - b);
+                case Symbols.TIMES: return Integer.valueOf(a * b);
+                case Symbols.DIVIDE: return Integer.valueOf(a / b);
+                case Symbols.MODULO: return Integer.valueOf(a % b);
+                case Symbols.EQ: return a == b ? TRUE : FALSE;
+                case Symbols.GT: return a > b ? TRUE : FALSE;
+                case Symbols.LT: return a < b ? TRUE : FALSE;
+                default: throw new StoneException("bad operator "+where);
+            }
+        } else if(op == Symbols.PLUS){
+            return String.valueOf(left)+String.valueOf(right);
+        } else if(op == Symbols.EQ){
+            if(left == null)
+                return right == null ? TRUE : FALSE;
+            return left.equals(right) ? TRUE : FALSE;
+        }
+        throw new StoneException("bad type "+where);
+    }
+
+    public static int divide(int a,int b){
+        return a / b;
+    }
+
+    public static int modulo(int a,int b){
+        return a % b;
+    }
+
+    public static boolean isTrue(Object c){
+        return c instanceof Integer && ((Integer)c).intValue() != FALSE;
+    }
+
+    public static boolean isFalse(Object c){
+        return c instanceof Integer && ((Integer)c).intValue() == FALSE;
+    }
+
+    public static Object fail(Object ignored,String message){
+        throw new StoneException(message);
+    }
+}
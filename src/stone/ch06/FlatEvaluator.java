@@ -0,0 +1,123 @@
+package stone.ch06;
+
+import stone.*;
+import stone.ast.FlatTree;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static stone.ch06.BasicEvaluator.FALSE;
+import static stone.ch06.BasicEvaluator.TRUE;
+
+public class FlatEvaluator {
+    private FlatTree tree;
+
+    public FlatEvaluator(FlatTree tree){
+        this.tree = tree;
+    }
+
+    public static void main(String[] args) throws ParseException,IOException{
+        Lexer lexer = args.length > 0 ? TokenBuffer.map(Paths.get(args[0])).lexer() : new Lexer(new CodeDialog());
+        FlatTree tree = FlatTree.parse(new BasicPaser(),lexer);
+        FlatEvaluator evaluator = new FlatEvaluator(tree);
+        Environment env = new BasicEnv();
+        for(int i = 0;i<tree.statements();i++){
+            int n = tree.statement(i);
+            if(tree.kind(n) != FlatTree.NULL){
+                System.out.println("=> "+evaluator.eval(n,env));
+            }
+        }
+    }
+
+    public Object eval(int n,Environment env){
+        switch (tree.kind(n)){
+            case FlatTree.NUMBER:
+                return tree.number(n);
+            case FlatTree.STRING:
+                return tree.string(n);
+            case FlatTree.NAME: {
+                Object value = env.get(tree.name(n));
+                if(value == null)
+                    throw new StoneException("undefined name: "+tree.name(n),tree.view(n));
+                return value;
+            }
+            case FlatTree.NEGATIVE: {
+                Object v = eval(tree.first(n),env);
+                if(v instanceof Integer)
+                    return Integer.valueOf(-((Integer)v).intValue());
+                throw new StoneException("bad type for -",tree.view(n));
+            }
+            case FlatTree.BINARY:
+                return binary(n,env);
+            case FlatTree.BLOCK: {
+                Object result = 0;
+                for(int c = tree.first(n);c >= 0;c = tree.next(c)){
+                    if(tree.kind(c) != FlatTree.NULL)
+                        result = eval(c,env);
+                }
+                return result;
+            }
+            case FlatTree.IF: {
+                int cond = tree.first(n);
+                int then = tree.next(cond);
+                Object c = eval(cond,env);
+                if(c instanceof Integer && ((Integer)c).intValue() != FALSE)
+                    return eval(then,env);
+                int otherwise = tree.next(then);
+                return otherwise < 0 ? 0 : eval(otherwise,env);
+            }
+            case FlatTree.WHILE: {
+                int cond = tree.first(n);
+                int body = tree.next(cond);
+                Object result = 0;
+                for(;;){
+                    Object c = eval(cond,env);
+                    if(c instanceof Integer && ((Integer)c).intValue() == FALSE)
+                        return result;
+                    result = eval(body,env);
+                }
+            }
+            default:
+                throw new StoneException("cannot eval: "+tree.view(n),tree.view(n));
+        }
+    }
+
+    protected Object binary(int n,Environment env){
+        int l = tree.first(n);
+        int o = tree.next(l);
+        int r = tree.next(o);
+        int op = tree.payload(o);
+        if(op == Symbols.ASSIGN){
+            Object right = eval(r,env);
+            if(tree.kind(l) == FlatTree.NAME){
+                env.put(tree.name(l),right);
+                return right;
+            }
+            throw new StoneException("bad assignment",tree.view(n));
+        }
+        Object left = eval(l,env);
+        Object right = eval(r,env);
+        if(left instanceof Integer && right instanceof Integer){
+            int a = (Integer)left;
+            int b = (Integer)right;
+            switch (op){
+                case Symbols.PLUS: return a + b;
+                case Symbols.MINUS: return a - b;
+                case Symbols.TIMES: return a * b;
+                case Symbols.DIVIDE: return a / b;
+                case Symbols.MODULO: return a % b;
+                case Symbols.EQ: return a == b ? TRUE : FALSE;
+                case Symbols.GT: return a > b ? TRUE : FALSE;
+                case Symbols.LT: return a < b ? TRUE : FALSE;
+                default: throw new StoneException("bad operator",tree.view(n));
+            }
+        } else if(op == Symbols.PLUS){
+            return String.valueOf(left)+String.valueOf(right);
+        } else if(op == Symbols.EQ){
+            if(left == null)
+                return right == null ? TRUE : FALSE;
+            return left.equals(right) ? TRUE : FALSE;
+        }
+        throw new StoneException("bad type",tree.view(n));
+    }
+}
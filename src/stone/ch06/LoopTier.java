@@ -0,0 +1,86 @@
+package stone.ch06;
+
+import javassist.CtClass;
+import stone.ast.WhileStmnt;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoopTier {
+    public static final String THRESHOLD_PROPERTY = "stone.loop.threshold";
+    public static final String VERBOSE_PROPERTY = "stone.loop.verbose";
+    public static final int DEFAULT_THRESHOLD = 10000;
+    private static final String CLASS_PREFIX = LoopTier.class.getName()+"$Loop";
+
+    public static final Listener PRINT = new Listener() {
+        @Override
+        public void promoted(WhileStmnt loop,int iterations) {
+            System.err.println("tier: loop "+loop.location()+" compiled after "+iterations+" iterations");
+        }
+
+        @Override
+        public void rejected(WhileStmnt loop,int iterations) {
+            System.err.println("tier: loop "+loop.location()+" not compiled after "+iterations+" iterations");
+        }
+
+        @Override
+        public void deoptimized(WhileStmnt loop) {
+            System.err.println("tier: loop "+loop.location()+" deoptimized");
+        }
+    };
+
+    private static final CompiledLoop REJECTED = new CompiledLoop() {
+        @Override
+        public Object resume(Environment env,Object result) {
+            return CompiledRuntime.DEOPT;
+        }
+    };
+
+    private static volatile int threshold = Integer.getInteger(THRESHOLD_PROPERTY,DEFAULT_THRESHOLD);
+    private static volatile Listener listener = Boolean.getBoolean(VERBOSE_PROPERTY) ? PRINT : null;
+    private static final AtomicInteger promotions = new AtomicInteger();
+    private static final AtomicInteger rejections = new AtomicInteger();
+    private static final AtomicInteger deopts = new AtomicInteger();
+    private static final AtomicInteger names = new AtomicInteger();
+
+    public interface Listener {
+        void promoted(WhileStmnt loop,int iterations);
+        void rejected(WhileStmnt loop,int iterations);
+        void deoptimized(WhileStmnt loop);
+    }
+
+    public static int threshold(){return threshold;}
+
+    public static void setThreshold(int iterations){threshold = iterations;}
+
+    public static void setListener(Listener l){listener = l;}
+
+    public static int promotions(){return promotions.get();}
+
+    public static int rejections(){return rejections.get();}
+
+    public static int deopts(){return deopts.get();}
+
+    public static CompiledLoop compile(WhileStmnt loop,int iterations){
+        CtClass ct = new StoneCompiler(CLASS_PREFIX+names.getAndIncrement()).compileLoop(loop);
+        Listener l = listener;
+        if(ct == null){
+            rejections.incrementAndGet();
+            if(l != null) l.rejected(loop,iterations);
+            return REJECTED;
+        }
+        CompiledLoop compiled = StoneCompiler.defineLoop(ct);
+        promotions.incrementAndGet();
+        if(l != null) l.promoted(loop,iterations);
+        return compiled;
+    }
+
+    public static Object resume(WhileStmnt loop,CompiledLoop compiled,Environment env,Object result){
+        Object r = compiled.resume(env,result);
+        if(r == CompiledRuntime.DEOPT && compiled != REJECTED){
+            deopts.incrementAndGet();
+            Listener l = listener;
+            if(l != null) l.deoptimized(loop);
+        }
+        return r;
+    }
+}
@@ -0,0 +1,11 @@
+package stone.ch06;
+
+public class NonIntValue extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public final Object value;
+
+    public NonIntValue(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
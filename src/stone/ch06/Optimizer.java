@@ -0,0 +1,157 @@
+package stone.ch06;
+
+import stone.Symbols;
+import stone.Token;
+import stone.ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static stone.ch06.BasicEvaluator.FALSE;
+import static stone.ch06.BasicEvaluator.TRUE;
+
+public class Optimizer {
+    public static ASTree optimize(ASTree t){
+        if(t instanceof BinaryExpr){
+            return binary((BinaryExpr)t);
+        } else if(t instanceof NegativeExpr){
+            NegativeExpr n = (NegativeExpr)t;
+            ASTree operand = optimize(n.operand());
+            Object v = constant(operand);
+            if(v instanceof Integer){
+                return literal(line(operand),-(Integer)v);
+            }
+            return operand == n.operand() ? n : new NegativeExpr(list(operand));
+        } else if(t instanceof BlockStmnt){
+            ArrayList<ASTree> children = new ArrayList<>(t.numChildren());
+            boolean changed = false;
+            for(ASTree c:t){
+                ASTree o = c instanceof NullStmnt ? null : optimize(c);
+                if(o != null) children.add(o);
+                changed |= o != c;
+            }
+            if(children.size() == 1){
+                return children.get(0);
+            }
+            return changed ? new BlockStmnt(children) : t;
+        } else if(t instanceof IfStmnt){
+            IfStmnt s = (IfStmnt)t;
+            ASTree cond = optimize(s.condition());
+            ASTree then = optimize(s.thenBlock());
+            ASTree otherwise = s.elseBlock() == null ? null : optimize(s.elseBlock());
+            Object c = constant(cond);
+            if(c != null){
+                if(c instanceof Integer && (Integer)c != FALSE) return then;
+                return otherwise != null ? otherwise : literal(line(cond),0);
+            }
+            if(cond == s.condition() && then == s.thenBlock() && otherwise == s.elseBlock()){
+                return s;
+            }
+            return new IfStmnt(otherwise == null ? list(cond,then) : list(cond,then,otherwise));
+        } else if(t instanceof WhileStmnt){
+            WhileStmnt w = (WhileStmnt)t;
+            ASTree cond = optimize(w.condition());
+            Object c = constant(cond);
+            if(c instanceof Integer && (Integer)c == FALSE){
+                return literal(line(cond),0);
+            }
+            ASTree body = optimize(w.body());
+            return cond == w.condition() && body == w.body() ? w : new WhileStmnt(list(cond,body));
+        }
+        return t;
+    }
+
+    private static ASTree binary(BinaryExpr b){
+        ASTree left = b.left();
+        ASTree right = optimize(b.right());
+        int op = b.operatorId();
+        if(op != Symbols.ASSIGN){
+            left = optimize(left);
+            Object folded = fold(constant(left),op,constant(right));
+            if(folded != null){
+                return literal(line(left),folded);
+            }
+        }
+        if(left == b.left() && right == b.right()){
+            return b;
+        }
+        return new BinaryExpr(list(left,b.child(1),right));
+    }
+
+    private static Object fold(Object left,int op,Object right){
+        if(left == null || right == null){
+            return null;
+        } else if(left instanceof Integer && right instanceof Integer){
+            int a = (Integer)left;
+            int b = (Integer)right;
+            switch (op){
+                case Symbols.PLUS: return a + b;
+                case Symbols.MINUS: return a - b;
+                case Symbols.TIMES: return a * b;
+                case Symbols.DIVIDE: return b == 0 ? null : a / b;
+                case Symbols.MODULO: return b == 0 ? null : a % b;
+                case Symbols.EQ: return a == b ? TRUE : FALSE;
+                case Symbols.GT: return a > b ? TRUE : FALSE;
+                case Symbols.LT: return a < b ? TRUE : FALSE;
+                default: return null;
+            }
+        } else if(op == Symbols.PLUS){
+            return String.valueOf(left)+String.valueOf(right);
+        } else if(op == Symbols.EQ){
+            return left.equals(right) ? TRUE : FALSE;
+        }
+        return null;
+    }
+
+    private static Object constant(ASTree t){
+        if(t instanceof NumberLiteral){
+            return ((NumberLiteral)t).value();
+        } else if(t instanceof StringLiteral){
+            return ((StringLiteral)t).value();
+        }
+        return null;
+    }
+
+    private static int line(ASTree literal){
+        return ((ASTLeaf)literal).token().getLineNumber();
+    }
+
+    private static ASTree literal(int line,Object value){
+        Constant c = new Constant(line,value);
+        return value instanceof Integer ? new NumberLiteral(c) : new StringLiteral(c);
+    }
+
+    private static List<ASTree> list(ASTree... children){
+        return Arrays.asList(children);
+    }
+
+    protected static class Constant extends Token{
+        private Object value;
+
+        protected Constant(int line,Object value){
+            super(line);
+            this.value = value;
+        }
+
+        @Override
+        public boolean isNumber() {
+            return value instanceof Integer;
+        }
+
+        @Override
+        public boolean isString() {
+            return value instanceof String;
+        }
+
+        @Override
+        public int getNumber() {
+            return isNumber() ? (Integer)value : super.getNumber();
+        }
+
+        @Override
+        public String getText() {
+            return value.toString();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package stone.ch06;
+
+import stone.*;
+import stone.ast.ASTree;
+import stone.ast.NullStmnt;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class PipelinedInterpreter {
+    public static final int DEFAULT_CAPACITY = 256;
+    private static final Object END = new Object();
+
+    public static void main(String[] args) throws ParseException,IOException{
+        Reader reader = args.length > 0
+                ? Files.newBufferedReader(Paths.get(args[0]),StandardCharsets.UTF_8)
+                : new CodeDialog();
+        run(new BasicPaser(),new ArrayEnv(),new Lexer(reader),DEFAULT_CAPACITY);
+    }
+
+    public static void run(BasicPaser bp,Environment env,Lexer lexer,int capacity) throws ParseException{
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(capacity);
+        Thread producer = new Thread(new Producer(bp,lexer,queue),"stone-parser");
+        producer.setDaemon(true);
+        producer.start();
+        try {
+            for(Object o = take(queue);o != END;o = take(queue)){
+                if(o instanceof ParseException){
+                    throw (ParseException)o;
+                } else if(o instanceof RuntimeException){
+                    throw (RuntimeException)o;
+                } else if(o instanceof Error){
+                    throw (Error)o;
+                }
+                if(env instanceof ArrayEnv) Resolver.resolve((ASTree)o,(ArrayEnv)env);
+                Object r = ((BasicEvaluator.ASTreeEx)o).eval(env);
+                System.out.println("=> "+r);
+            }
+        } finally {
+            producer.interrupt();
+        }
+    }
+
+    private static Object take(BlockingQueue<Object> queue){
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoneException("interpreter interrupted");
+        }
+    }
+
+    protected static class Producer implements Runnable{
+        private BasicPaser parser;
+        private Lexer lexer;
+        private BlockingQueue<Object> queue;
+
+        protected Producer(BasicPaser parser,Lexer lexer,BlockingQueue<Object> queue){
+            this.parser = parser;
+            this.lexer = lexer;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            Object last = END;
+            try {
+                while (lexer.peek(0) != Token.EOF){
+                    ASTree t = Optimizer.optimize(parser.parse(lexer));
+                    if(!(t instanceof NullStmnt)){
+                        queue.put(t);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                last = e;
+            } finally {
+                try {
+                    lexer.close();
+                } catch (IOException e) {
+                    if(last == END) last = new ParseException(e);
+                }
+            }
+            try {
+                queue.put(last);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package stone.ch06;
+
+import stone.Symbols;
+import stone.ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public class RegisterCode {
+    public static final int WIDTH = 4;
+
+    public static final int LOADI = 0;
+    public static final int LOADK = 1;
+    public static final int LOADG = 2;
+    public static final int STOREG = 3;
+    public static final int ADD = 4;
+    public static final int SUB = 5;
+    public static final int MUL = 6;
+    public static final int DIV = 7;
+    public static final int MOD = 8;
+    public static final int EQ = 9;
+    public static final int GT = 10;
+    public static final int LT = 11;
+    public static final int BINARY = 12;
+    public static final int NEG = 13;
+    public static final int JMP = 14;
+    public static final int JNTRUE = 15;
+    public static final int JFALSE = 16;
+    public static final int FAIL = 17;
+    public static final int RET = 18;
+
+    private int[] code = new int[256];
+    private int size;
+    private ArrayList<String> strings = new ArrayList<>();
+    private HashMap<String,Integer> stringIndex = new HashMap<>();
+    private ArrayList<String> globals = new ArrayList<>();
+    private HashMap<String,Integer> globalIndex = new HashMap<>();
+    private ArrayList<String> wheres = new ArrayList<>();
+    private int[] entries = new int[16];
+    private int statements;
+    private int registers = 1;
+
+    public static RegisterCode compile(List<ASTree> program){
+        RegisterCode c = new RegisterCode();
+        for(ASTree t:program){
+            if(!(t instanceof NullStmnt)) c.add(t);
+        }
+        return c.trim();
+    }
+
+    public int add(ASTree statement){
+        if(statements == entries.length){
+            entries = Arrays.copyOf(entries,Math.max(16,statements*2));
+        }
+        entries[statements] = size;
+        emit(statement,0);
+        op(RET,0,0,0,null);
+        return statements++;
+    }
+
+    private void emit(ASTree t,int dst){
+        registers = Math.max(registers,dst+1);
+        if(t instanceof NumberLiteral){
+            op(LOADI,dst,((NumberLiteral)t).value(),0,null);
+        } else if(t instanceof StringLiteral){
+            op(LOADK,dst,string(((StringLiteral)t).value()),0,null);
+        } else if(t instanceof Name){
+            op(LOADG,dst,global(((Name)t).name()),0,"undefined name: "+((Name)t).name()+" "+t.location());
+        } else if(t instanceof NegativeExpr){
+            emit(((NegativeExpr)t).operand(),dst);
+            op(NEG,dst,dst,0,"bad type for - "+t.location());
+        } else if(t instanceof BinaryExpr){
+            binary((BinaryExpr)t,dst);
+        } else if(t instanceof BlockStmnt){
+            op(LOADI,dst,0,0,null);
+            for(ASTree c:t){
+                if(!(c instanceof NullStmnt)) emit(c,dst);
+            }
+        } else if(t instanceof IfStmnt){
+            IfStmnt s = (IfStmnt)t;
+            emit(s.condition(),dst);
+            int branch = op(JNTRUE,dst,0,0,null);
+            emit(s.thenBlock(),dst);
+            int exit = op(JMP,0,0,0,null);
+            code[branch+2] = size;
+            if(s.elseBlock() == null) op(LOADI,dst,0,0,null);
+            else emit(s.elseBlock(),dst);
+            code[exit+1] = size;
+        } else if(t instanceof WhileStmnt){
+            WhileStmnt w = (WhileStmnt)t;
+            op(LOADI,dst,0,0,null);
+            int top = size;
+            emit(w.condition(),dst+1);
+            int branch = op(JFALSE,dst+1,0,0,null);
+            emit(w.body(),dst);
+            op(JMP,top,0,0,null);
+            code[branch+2] = size;
+        } else {
+            op(FAIL,dst,0,0,"cannot eval: "+t+" "+t.location());
+        }
+    }
+
+    private void binary(BinaryExpr b,int dst){
+        int op = b.operatorId();
+        if(op == Symbols.ASSIGN){
+            emit(b.right(),dst);
+            if(b.left() instanceof Name) op(STOREG,global(((Name)b.left()).name()),dst,0,null);
+            else op(FAIL,dst,0,0,"bad assignment "+b.location());
+            return;
+        }
+        emit(b.left(),dst);
+        emit(b.right(),dst+1);
+        String where = String.valueOf(b.location());
+        switch (op){
+            case Symbols.PLUS: op(ADD,dst,dst,dst+1,where); break;
+            case Symbols.MINUS: op(SUB,dst,dst,dst+1,where); break;
+            case Symbols.TIMES: op(MUL,dst,dst,dst+1,where); break;
+            case Symbols.DIVIDE: op(DIV,dst,dst,dst+1,where); break;
+            case Symbols.MODULO: op(MOD,dst,dst,dst+1,where); break;
+            case Symbols.EQ: op(EQ,dst,dst,dst+1,where); break;
+            case Symbols.GT: op(GT,dst,dst,dst+1,where); break;
+            case Symbols.LT: op(LT,dst,dst,dst+1,where); break;
+            default: op(BINARY,dst,dst+1,op,where);
+        }
+    }
+
+    private int op(int opcode,int a,int b,int c,String where){
+        if(size+WIDTH > code.length){
+            code = Arrays.copyOf(code,Math.max(256,code.length*2));
+        }
+        int pc = size;
+        code[pc] = opcode;
+        code[pc+1] = a;
+        code[pc+2] = b;
+        code[pc+3] = c;
+        wheres.add(where);
+        size += WIDTH;
+        return pc;
+    }
+
+    private int string(String s){
+        Integer i = stringIndex.get(s);
+        if(i == null){
+            i = strings.size();
+            strings.add(s);
+            stringIndex.put(s,i);
+        }
+        return i;
+    }
+
+    private int global(String name){
+        Integer i = globalIndex.get(name);
+        if(i == null){
+            i = globals.size();
+            globals.add(name);
+            globalIndex.put(name,i);
+        }
+        return i;
+    }
+
+    public RegisterCode trim(){
+        code = Arrays.copyOf(code,size);
+        entries = Arrays.copyOf(entries,statements);
+        strings.trimToSize();
+        globals.trimToSize();
+        wheres.trimToSize();
+        return this;
+    }
+
+    public int[] code(){return code;}
+
+    public int size(){return size;}
+
+    public int statements(){return statements;}
+
+    public int entry(int i){return entries[i];}
+
+    public int registers(){return registers;}
+
+    public String string(int i){return strings.get(i);}
+
+    public int globals(){return globals.size();}
+
+    public String global(int i){return globals.get(i);}
+
+    public String where(int pc){return wheres.get(pc/WIDTH);}
+}
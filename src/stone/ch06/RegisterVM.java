@@ -0,0 +1,203 @@
+package stone.ch06;
+
+import stone.*;
+import stone.ast.ASTree;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import static stone.ch06.BasicEvaluator.FALSE;
+import static stone.ch06.BasicEvaluator.TRUE;
+import static stone.ch06.RegisterCode.*;
+
+public class RegisterVM {
+    private RegisterCode program;
+    private Environment env;
+    private int[] slots;
+    private int[] ints;
+    private Object[] objs;
+
+    public RegisterVM(RegisterCode program){
+        this.program = program;
+        ints = new int[program.registers()];
+        objs = new Object[program.registers()];
+    }
+
+    public static void main(String[] args) throws ParseException,IOException{
+        Reader reader = args.length > 0
+                ? Files.newBufferedReader(Paths.get(args[0]),StandardCharsets.UTF_8)
+                : new CodeDialog();
+        Lexer lexer = new Lexer(reader);
+        BasicPaser bp = new BasicPaser();
+        ArrayList<ASTree> statements = new ArrayList<>();
+        while (lexer.peek(0) != Token.EOF){
+            statements.add(Optimizer.optimize(bp.parse(lexer)));
+        }
+        RegisterVM vm = new RegisterVM(RegisterCode.compile(statements));
+        Environment env = new ArrayEnv();
+        for(int i = 0;i<vm.program.statements();i++){
+            System.out.println("=> "+vm.eval(i,env));
+        }
+    }
+
+    // statements may be added to the program between calls, so its code and size are read each time
+    public Object eval(int i,Environment env){
+        bind(env);
+        if(ints.length < program.registers()){
+            ints = new int[program.registers()];
+            objs = new Object[program.registers()];
+        }
+        int[] code = program.code();
+        int[] ints = this.ints;
+        Object[] objs = this.objs;
+        ArrayEnv array = env instanceof ArrayEnv ? (ArrayEnv)env : null;
+        int pc = program.entry(i);
+        for(;;){
+            int a = code[pc+1];
+            int b = code[pc+2];
+            int c = code[pc+3];
+            switch (code[pc]){
+                case LOADI:
+                    ints[a] = b;
+                    objs[a] = null;
+                    break;
+                case LOADK:
+                    objs[a] = program.string(b);
+                    break;
+                case LOADG: {
+                    if(array != null && array.isInt(slots[b])){
+                        ints[a] = array.getInt(slots[b]);
+                        objs[a] = null;
+                        break;
+                    }
+                    Object v = array != null ? array.get(slots[b]) : env.get(program.global(b));
+                    if(v == null)
+                        throw new StoneException(program.where(pc));
+                    set(a,v);
+                    break;
+                }
+                case STOREG:
+                    if(objs[b] == null){
+                        if(array != null) array.putInt(slots[a],ints[b]);
+                        else env.put(program.global(a),ints[b]);
+                    } else {
+                        if(array != null) array.put(slots[a],objs[b]);
+                        else env.put(program.global(a),objs[b]);
+                    }
+                    break;
+                case ADD:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] + ints[c];
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.PLUS,c,pc);
+                    break;
+                case SUB:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] - ints[c];
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.MINUS,c,pc);
+                    break;
+                case MUL:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] * ints[c];
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.TIMES,c,pc);
+                    break;
+                case DIV:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] / ints[c];
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.DIVIDE,c,pc);
+                    break;
+                case MOD:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] % ints[c];
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.MODULO,c,pc);
+                    break;
+                case EQ:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] == ints[c] ? TRUE : FALSE;
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.EQ,c,pc);
+                    break;
+                case GT:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] > ints[c] ? TRUE : FALSE;
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.GT,c,pc);
+                    break;
+                case LT:
+                    if(objs[b] == null && objs[c] == null){
+                        ints[a] = ints[b] < ints[c] ? TRUE : FALSE;
+                        objs[a] = null;
+                    } else generic(a,b,Symbols.LT,c,pc);
+                    break;
+                case BINARY:
+                    generic(a,a,c,b,pc);
+                    break;
+                case NEG:
+                    if(objs[b] != null)
+                        throw new StoneException(program.where(pc));
+                    ints[a] = -ints[b];
+                    objs[a] = null;
+                    break;
+                case JMP:
+                    pc = a;
+                    continue;
+                case JNTRUE:
+                    if(objs[a] != null || ints[a] == FALSE){
+                        pc = b;
+                        continue;
+                    }
+                    break;
+                case JFALSE:
+                    if(objs[a] == null && ints[a] == FALSE){
+                        pc = b;
+                        continue;
+                    }
+                    break;
+                case FAIL:
+                    throw new StoneException(program.where(pc));
+                case RET:
+                    return value(a);
+                default:
+                    throw new StoneException("bad opcode "+code[pc]+" at "+pc);
+            }
+            pc += WIDTH;
+        }
+    }
+
+    private void generic(int dst,int left,int op,int right,int pc){
+        set(dst,CompiledRuntime.binary(value(left),op,value(right),program.where(pc)));
+    }
+
+    private Object value(int r){
+        Object v = objs[r];
+        return v == null ? Integer.valueOf(ints[r]) : v;
+    }
+
+    private void set(int r,Object v){
+        if(v instanceof Integer){
+            ints[r] = (Integer)v;
+            objs[r] = null;
+        } else {
+            objs[r] = v;
+        }
+    }
+
+    private void bind(Environment env){
+        if(this.env == env && slots.length == program.globals()) return;
+        this.env = env;
+        slots = new int[program.globals()];
+        if(env instanceof ArrayEnv){
+            for(int g = 0;g<slots.length;g++){
+                slots[g] = ((ArrayEnv)env).slot(program.global(g));
+            }
+        }
+    }
+}
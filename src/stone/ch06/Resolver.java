@@ -0,0 +1,17 @@
+package stone.ch06;
+
+import stone.ast.ASTree;
+import stone.ast.Name;
+
+public class Resolver {
+    public static ASTree resolve(ASTree t,ArrayEnv env){
+        if(t instanceof Name){
+            ((BasicEvaluator.NameEx)t).bind(env,env.slot(((Name)t).name()));
+        } else {
+            for(int i = 0;i<t.numChildren();i++){
+                resolve(t.child(i),env);
+            }
+        }
+        return t;
+    }
+}
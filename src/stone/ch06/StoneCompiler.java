@@ -0,0 +1,364 @@
+package stone.ch06;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import stone.*;
+import stone.ast.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static stone.ch06.BasicEvaluator.FALSE;
+import static stone.ch06.BasicEvaluator.TRUE;
+
+public class StoneCompiler {
+    public static final String DEFAULT_NAME = "StoneProgram";
+    private static final String RT = CompiledRuntime.class.getName();
+    private static final int CHUNK = 256;
+    private static final ClassPool POOL = new ClassPool(true);
+
+    static {
+        POOL.appendClassPath(new LoaderClassPath(StoneCompiler.class.getClassLoader()));
+    }
+
+    private String className;
+    private CtClass ct;
+    private HashMap<Integer,String> numbers = new HashMap<>();
+    private LinkedHashMap<String,String> vars = new LinkedHashMap<>();
+    private StringBuilder out;
+    private int statements;
+    private int temps;
+
+    public StoneCompiler(String className){
+        this.className = className;
+    }
+
+    public static CtClass compile(List<ASTree> program,String className){
+        return new StoneCompiler(className).compile(program);
+    }
+
+    /** Classes are made in one shared pool; define() and write() detach them again, which frees the name. */
+    public CtClass compile(List<ASTree> program){
+        synchronized (POOL){
+            try {
+                ct = POOL.makeClass(className);
+                ct.addInterface(POOL.get(CompiledProgram.class.getName()));
+                for(ASTree t:program){
+                    if(!(t instanceof NullStmnt)) statement(t);
+                }
+                StringBuilder dispatch = new StringBuilder();
+                for(int c = 0;c*CHUNK<statements;c++){
+                    StringBuilder sb = new StringBuilder("private static Object eval"+c+"(int i,"+Environment.class.getName()+" env){switch(i){");
+                    for(int i = c*CHUNK;i<Math.min(statements,(c+1)*CHUNK);i++){
+                        sb.append("case ").append(i).append(": return s").append(i).append("(env);");
+                    }
+                    sb.append("default: throw new IndexOutOfBoundsException(\"statement: \"+i);}}");
+                    ct.addMethod(CtNewMethod.make(sb.toString(),ct));
+                    dispatch.append("case ").append(c).append(": return eval").append(c).append("(i,env);");
+                }
+                ct.addMethod(CtNewMethod.make("public int statements(){return "+statements+";}",ct));
+                ct.addMethod(CtNewMethod.make("public Object eval(int i,"+Environment.class.getName()+" env){"
+                        +"if(i < 0) throw new IndexOutOfBoundsException(\"statement: \"+i);"
+                        +"switch(i/"+CHUNK+"){"+dispatch
+                        +"default: throw new IndexOutOfBoundsException(\"statement: \"+i);}}",ct));
+                return ct;
+            } catch (CannotCompileException|NotFoundException e) {
+                ct.detach();
+                throw new StoneException("cannot compile: "+e.getMessage());
+            }
+        }
+    }
+
+    public CtClass compileLoop(WhileStmnt loop){
+        LinkedHashSet<String> assigned = new LinkedHashSet<>();
+        if(!intOnly(loop,assigned)) return null;
+        synchronized (POOL){
+            try {
+                ct = POOL.makeClass(className);
+                ct.addInterface(POOL.get(CompiledLoop.class.getName()));
+                out = new StringBuilder();
+                out.append("public Object resume(").append(Environment.class.getName()).append(" env,Object result){");
+                for(Map.Entry<String,String> v:vars.entrySet()){
+                    out.append("Object o").append(v.getValue()).append(" = env.get(").append(quote(v.getKey())).append(");");
+                    out.append("if(!(o").append(v.getValue()).append(" instanceof Integer)) return ").append(RT).append(".DEOPT;");
+                }
+                for(String v:vars.values()){
+                    out.append("int ").append(v).append(" = ((Integer)o").append(v).append(").intValue();");
+                }
+                StringBuilder store = new StringBuilder();
+                for(String name:assigned){
+                    store.append("env.put(").append(quote(name)).append(",Integer.valueOf(").append(vars.get(name)).append("));");
+                }
+                out.append("int r = 0;boolean ran = false;try {");
+                out.append("while(").append(intExpr(loop.condition())).append(" != ").append(FALSE).append("){");
+                emitInt(loop.body(),"r");
+                out.append("ran = true;}");
+                out.append("} finally {").append(store).append("}");
+                out.append("if(ran) return Integer.valueOf(r);return result;}");
+                ct.addMethod(CtNewMethod.make(out.toString(),ct));
+                return ct;
+            } catch (CannotCompileException|NotFoundException e) {
+                ct.detach();
+                throw new StoneException("cannot compile: "+e.getMessage());
+            }
+        }
+    }
+
+    public static CompiledProgram define(CtClass ct){
+        return (CompiledProgram)instantiate(ct);
+    }
+
+    public static CompiledLoop defineLoop(CtClass ct){
+        return (CompiledLoop)instantiate(ct);
+    }
+
+    private static Object instantiate(CtClass ct){
+        try {
+            byte[] code = bytecode(ct);
+            Class<?> c = new Loader(StoneCompiler.class.getClassLoader()).define(ct.getName(),code);
+            return c.getDeclaredConstructor().newInstance();
+        } catch (IOException|CannotCompileException|ReflectiveOperationException e) {
+            throw new StoneException("cannot define "+ct.getName()+": "+e.getMessage());
+        }
+    }
+
+    public static Path write(CtClass ct,Path dir) throws IOException{
+        Path file = dir.resolve(ct.getName().replace('.','/')+".class");
+        Files.createDirectories(file.getParent());
+        try {
+            Files.write(file,bytecode(ct));
+        } catch (CannotCompileException e) {
+            throw new StoneException("cannot compile: "+e.getMessage());
+        }
+        return file;
+    }
+
+    private static byte[] bytecode(CtClass ct) throws IOException,CannotCompileException{
+        synchronized (POOL){
+            try {
+                return ct.toBytecode();
+            } finally {
+                ct.detach();
+            }
+        }
+    }
+
+    public static void run(CompiledProgram program,Environment env){
+        for(int i = 0;i<program.statements();i++){
+            System.out.println("=> "+program.eval(i,env));
+        }
+    }
+
+    private void statement(ASTree t) throws CannotCompileException{
+        out = new StringBuilder();
+        temps = 0;
+        out.append("private static Object s").append(statements++).append("(")
+                .append(Environment.class.getName()).append(" env){Object r = null;");
+        emit(t,"r");
+        out.append("return r;}");
+        ct.addMethod(CtNewMethod.make(out.toString(),ct));
+    }
+
+    private void emit(ASTree t,String target) throws CannotCompileException{
+        if(t instanceof BlockStmnt){
+            out.append(target).append(" = ").append(RT).append(".ZERO;");
+            for(ASTree c:t){
+                if(!(c instanceof NullStmnt)) emit(c,target);
+            }
+        } else if(t instanceof IfStmnt){
+            IfStmnt s = (IfStmnt)t;
+            out.append("if(").append(RT).append(".isTrue(").append(expr(s.condition())).append(")){");
+            emit(s.thenBlock(),target);
+            out.append("} else {");
+            if(s.elseBlock() == null) out.append(target).append(" = ").append(RT).append(".ZERO;");
+            else emit(s.elseBlock(),target);
+            out.append("}");
+        } else if(t instanceof WhileStmnt){
+            WhileStmnt w = (WhileStmnt)t;
+            out.append(target).append(" = ").append(RT).append(".ZERO;");
+            out.append("while(!").append(RT).append(".isFalse(").append(expr(w.condition())).append(")){");
+            emit(w.body(),target);
+            out.append("}");
+        } else {
+            out.append(target).append(" = ").append(expr(t)).append(";");
+        }
+    }
+
+    private String expr(ASTree t) throws CannotCompileException{
+        if(t instanceof NumberLiteral){
+            return number(((NumberLiteral)t).value());
+        } else if(t instanceof StringLiteral){
+            return quote(((StringLiteral)t).value());
+        } else if(t instanceof Name){
+            String name = ((Name)t).name();
+            return RT+".get(env,"+quote(name)+","+quote(String.valueOf(t.location()))+")";
+        } else if(t instanceof NegativeExpr){
+            return RT+".negate("+expr(((NegativeExpr)t).operand())+","+quote(String.valueOf(t.location()))+")";
+        } else if(t instanceof BinaryExpr){
+            BinaryExpr b = (BinaryExpr)t;
+            int op = b.operatorId();
+            if(op == Symbols.ASSIGN){
+                String right = expr(b.right());
+                if(b.left() instanceof Name)
+                    return RT+".assign(env,"+quote(((Name)b.left()).name())+","+right+")";
+                return RT+".fail("+right+","+quote("bad assignment "+t.location())+")";
+            }
+            return RT+".binary("+expr(b.left())+","+op+","+expr(b.right())+","+quote(String.valueOf(t.location()))+")";
+        } else if(t instanceof BlockStmnt || t instanceof IfStmnt || t instanceof WhileStmnt){
+            String temp = "t"+temps++;
+            out.append("Object ").append(temp).append(" = null;");
+            emit(t,temp);
+            return temp;
+        }
+        return RT+".fail(null,"+quote("cannot eval: "+t+" "+t.location())+")";
+    }
+
+    private boolean intOnly(ASTree t,LinkedHashSet<String> assigned){
+        if(t instanceof NumberLiteral || t instanceof NullStmnt){
+            return true;
+        } else if(t instanceof Name){
+            String name = ((Name)t).name();
+            if(!vars.containsKey(name)) vars.put(name,"v"+vars.size());
+            return true;
+        } else if(t instanceof BinaryExpr){
+            BinaryExpr b = (BinaryExpr)t;
+            switch (b.operatorId()){
+                case Symbols.ASSIGN:
+                    if(!(b.left() instanceof Name)) return false;
+                    assigned.add(((Name)b.left()).name());
+                    return intOnly(b.left(),assigned) && intOnly(b.right(),assigned);
+                case Symbols.PLUS: case Symbols.MINUS: case Symbols.TIMES: case Symbols.DIVIDE:
+                case Symbols.MODULO: case Symbols.EQ: case Symbols.GT: case Symbols.LT:
+                    return intOnly(b.left(),assigned) && intOnly(b.right(),assigned);
+                default:
+                    return false;
+            }
+        } else if(t instanceof NegativeExpr || t instanceof BlockStmnt || t instanceof IfStmnt || t instanceof WhileStmnt){
+            for(ASTree c:t){
+                if(!intOnly(c,assigned)) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void emitInt(ASTree t,String target){
+        if(t instanceof BlockStmnt){
+            out.append(target).append(" = 0;");
+            for(ASTree c:t){
+                if(!(c instanceof NullStmnt)) emitInt(c,target);
+            }
+        } else if(t instanceof IfStmnt){
+            IfStmnt s = (IfStmnt)t;
+            out.append("if(").append(intExpr(s.condition())).append(" != ").append(FALSE).append("){");
+            emitInt(s.thenBlock(),target);
+            out.append("} else {");
+            if(s.elseBlock() == null) out.append(target).append(" = 0;");
+            else emitInt(s.elseBlock(),target);
+            out.append("}");
+        } else if(t instanceof WhileStmnt){
+            WhileStmnt w = (WhileStmnt)t;
+            out.append(target).append(" = 0;");
+            out.append("while(").append(intExpr(w.condition())).append(" != ").append(FALSE).append("){");
+            emitInt(w.body(),target);
+            out.append("}");
+        } else {
+            out.append(target).append(" = ").append(intExpr(t)).append(";");
+        }
+    }
+
+    private String intExpr(ASTree t){
+        if(t instanceof NumberLiteral){
+            int n = ((NumberLiteral)t).value();
+            return n < 0 ? "("+n+")" : Integer.toString(n);
+        } else if(t instanceof Name){
+            return vars.get(((Name)t).name());
+        } else if(t instanceof NegativeExpr){
+            return "(-"+intExpr(((NegativeExpr)t).operand())+")";
+        }
+        BinaryExpr b = (BinaryExpr)t;
+        String right = intExpr(b.right());
+        switch (b.operatorId()){
+            case Symbols.ASSIGN: return "("+vars.get(((Name)b.left()).name())+" = "+right+")";
+            case Symbols.PLUS: return "("+intExpr(b.left())+" + "+right+")";
+            case Symbols.MINUS: return "("+intExpr(b.left())+" - "+right+")";
+            case Symbols.TIMES: return "("+intExpr(b.left())+" * "+right+")";
+            case Symbols.DIVIDE: return RT+".divide("+intExpr(b.left())+","+right+")";
+            case Symbols.MODULO: return RT+".modulo("+intExpr(b.left())+","+right+")";
+            case Symbols.EQ: return "("+intExpr(b.left())+" == "+right+" ? "+TRUE+" : "+FALSE+")";
+            case Symbols.GT: return "("+intExpr(b.left())+" > "+right+" ? "+TRUE+" : "+FALSE+")";
+            default: return "("+intExpr(b.left())+" < "+right+" ? "+TRUE+" : "+FALSE+")";
+        }
+    }
+
+    private String number(int n) throws CannotCompileException{
+        String field = numbers.get(n);
+        if(field == null){
+            field = "n"+numbers.size();
+            numbers.put(n,field);
+            ct.addField(CtField.make("private static final Integer "+field+" = Integer.valueOf("+n+");",ct));
+        }
+        return field;
+    }
+
+    private static String quote(String s){
+        StringBuilder sb = new StringBuilder("\"");
+        for(int i = 0;i<s.length();i++){
+            char c = s.charAt(i);
+            switch (c){
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                default:
+                    if(c < 0x20 || c > 0x7e) sb.append("\"+(char)").append((int)c).append("+\"");
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static void main(String[] args) throws ParseException,IOException{
+        Reader reader = args.length > 0
+                ? Files.newBufferedReader(Paths.get(args[0]),StandardCharsets.UTF_8)
+                : new CodeDialog();
+        Lexer lexer = new Lexer(reader);
+        BasicPaser bp = new BasicPaser();
+        ArrayList<ASTree> program = new ArrayList<>();
+        while (lexer.peek(0) != Token.EOF){
+            program.add(Optimizer.optimize(bp.parse(lexer)));
+        }
+        CtClass ct = compile(program,args.length > 2 ? args[2] : DEFAULT_NAME);
+        if(args.length > 1){
+            System.out.println(write(ct,Paths.get(args[1])));
+        } else {
+            run(define(ct),new ArrayEnv());
+        }
+    }
+
+    protected static class Loader extends ClassLoader{
+        protected Loader(ClassLoader parent){
+            super(parent);
+        }
+
+        protected Class<?> define(String name,byte[] code){
+            return defineClass(name,code,0,code.length);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package stone;
+
+public class AllTests {
+    public static void main(String[] args) throws Throwable{
+        LexerTest.main(args);
+        SymbolsTest.main(args);
+        ParserTest.main(args);
+        IncrementalParserTest.main(args);
+        GeneratedParserTest.main(args);
+        BatchParserTest.main(args);
+        AstCacheTest.main(args);
+        stone.ch06.PipelinedInterpreterTest.main(args);
+        stone.ch06.EvaluatorTest.main(args);
+        stone.ch06.RegisterVMTest.main(args);
+        stone.ch06.StoneCompilerTest.main(args);
+        stone.ch06.NameCacheTest.main(args);
+        stone.ch06.TierTest.main(args);
+    }
+}
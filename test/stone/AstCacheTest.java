@@ -0,0 +1,113 @@
+package stone;
+
+import stone.ast.ASTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class AstCacheTest {
+    static boolean initialized;
+
+    static class Boom {
+        static {
+            initialized = true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception{
+        Path dir = Files.createTempDirectory("astcache");
+        Path script = dir.resolve("s.stone");
+        StringBuilder src = new StringBuilder("s = \"caf\u00e9\"\n");
+        for(int i = 0;i<500;i++){
+            src.append("x").append(i).append(" = a + b * ").append(i).append('\n');
+        }
+        Files.write(script,src.toString().getBytes(StandardCharsets.UTF_8));
+        Path cacheDir = dir.resolve("cache");
+        BasicPaser bp = new BasicPaser();
+        AstCache cache = new AstCache(cacheDir,bp);
+
+        List<ASTree> parsed = cache.load(script);
+        List<ASTree> cached = cache.load(script);
+        Check.check(!(parsed instanceof AstCache.Trees),"the first load parses");
+        Check.check(cached instanceof AstCache.Trees,"the second load reads the cache");
+        Check.equal(parsed.toString(),cached.toString(),"cached trees match parsed trees");
+        Check.fails(UnsupportedOperationException.class,() -> parsed.add(null),"a parsed list is unmodifiable");
+        Check.fails(UnsupportedOperationException.class,() -> cached.add(null),"a cached list is unmodifiable");
+        Check.equal(1L,files(cacheDir),"one cache file");
+
+        BasicPaser other = new BasicPaser();
+        other.operators.add("+",5,Parser.Operators.LEFT);
+        List<ASTree> regrouped = new AstCache(cacheDir,other).load(script);
+        Check.check(!(regrouped instanceof AstCache.Trees),"a grammar change misses the cache");
+        Check.equal("(x0 = ((a + b) * 0))",regrouped.get(1).toString(),"the new grammar's trees are returned");
+        Check.equal(2L,files(cacheDir),"each grammar gets its own file");
+
+        List<ASTree> latin = new AstCache(cacheDir,bp).charset(StandardCharsets.ISO_8859_1).load(script);
+        Check.check(!(latin instanceof AstCache.Trees),"a charset change misses the cache");
+        Check.equal("(s = caf\u00c3\u00a9)",latin.get(0).toString(),"the source is decoded with the new charset");
+        Check.equal(3L,files(cacheDir),"each charset gets its own file");
+
+        Path file = cacheDir.resolve(cache.key(Files.readAllBytes(script))+".ast");
+        byte[] bytes = Files.readAllBytes(file);
+        for(int i = bytes.length-3;i<bytes.length;i++) bytes[i] = (byte)0xff;
+        Files.write(file,bytes);
+        Check.fails(IOException.class,() -> AstCache.read(file),"a corrupt body is rejected when the file is read");
+        List<ASTree> rebuilt = cache.load(script);
+        Check.equal(parsed.toString(),rebuilt.toString(),"a corrupt file is rebuilt from source");
+        Check.equal(parsed.toString(),AstCache.read(file).toString(),"the rebuilt file is valid");
+
+        Path alien = dir.resolve("alien.ast");
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(AstCache.MAGIC);
+        out.writeInt(AstCache.VERSION);
+        out.write(new byte[]{1,1});
+        out.writeByte(Boom.class.getName().length());
+        out.writeBytes(Boom.class.getName());
+        out.write(new byte[]{0,0});
+        Files.write(alien,header.toByteArray());
+        Check.fails(IOException.class,() -> AstCache.read(alien),"a class that is not an AST node is rejected");
+        Check.check(!initialized,"classes named by a cache file are not initialized");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<ASTree> shared = AstCache.read(file);
+            List<Future<String>> dumps = new ArrayList<>();
+            for(int k = 0;k<8;k++){
+                dumps.add(pool.submit(() -> {
+                    StringBuilder sb = new StringBuilder();
+                    for(int i = shared.size()-1;i>=0;i--){
+                        sb.append(System.identityHashCode(shared.get(i))).append(shared.get(i));
+                    }
+                    return sb.toString();
+                }));
+            }
+            for(Future<String> f:dumps){
+                Check.equal(dumps.get(0).get(),f.get(),"threads decoding one cache see the same trees");
+            }
+        } finally {
+            pool.shutdown();
+            try (Stream<Path> s = Files.walk(dir)){
+                s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        Check.passed(AstCacheTest.class,18);
+    }
+
+    private static long files(Path dir) throws IOException{
+        try (Stream<Path> s = Files.list(dir)){
+            return s.filter(p -> p.toString().endsWith(".ast")).count();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package stone;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class BatchParserTest {
+    public static void main(String[] args) throws Exception{
+        Path dir = Files.createTempDirectory("batch");
+        Path good = write(dir,"a.stone","x = 1\ny = x + 2\n");
+        Path bad = write(dir,"b.stone","x = 1\ny = (2\nz = 3\n");
+        StringBuilder deep = new StringBuilder("w = ");
+        for(int i = 0;i<200000;i++) deep.append('(');
+        Path nested = write(dir,"c.stone",deep.append("1\n").toString());
+        Path missing = dir.resolve("d.stone");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<BatchParser.Result> results = new BatchParser(new BasicPaser(),pool)
+                    .parse(Arrays.asList(good,bad,nested,missing));
+            Check.equal(4,results.size(),"one result per file");
+            Check.equal(null,results.get(0).error(),"a good file has no error");
+            Check.equal("[(x = 1), (y = (x + 2))]",results.get(0).trees().toString(),"a good file keeps its trees");
+            Check.check(results.get(1).error() instanceof ParseException,"a syntax error is reported for its file");
+            Check.equal("[(x = 1)]",results.get(1).trees().toString(),"trees before a syntax error are kept");
+            Check.check(results.get(2).error() instanceof StackOverflowError,"a too deeply nested file fails on its own");
+            Check.check(results.get(3).error() instanceof IOException,"a missing file fails on its own");
+
+            final Error fatal = new OutOfMemoryError("test");
+            BatchParser failing = new BatchParser(new BasicPaser(),pool){
+                @Override
+                protected Result parseFile(Path path){
+                    if(path.equals(bad)) throw fatal;
+                    return super.parseFile(path);
+                }
+            };
+            StoneException e = Check.fails(StoneException.class,() -> failing.parse(Arrays.asList(good,bad)),"an Error ends the batch");
+            Throwable cause = e.getCause();
+            while (cause != null && cause != fatal) cause = cause.getCause();
+            Check.check(cause == fatal,"the Error is chained as the cause: "+e.getCause());
+            Check.check(e.getMessage().contains(bad.toString()),"the failing file is named: "+e.getMessage());
+        } finally {
+            pool.shutdown();
+            for(Path p:Arrays.asList(good,bad,nested)) Files.delete(p);
+            Files.delete(dir);
+        }
+        Check.passed(BatchParserTest.class,10);
+    }
+
+    private static Path write(Path dir,String name,String text) throws IOException{
+        return Files.write(dir.resolve(name),text.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,33 @@
+package stone;
+
+import java.util.Objects;
+
+public class Check {
+    public static void check(boolean condition,String what){
+        if(!condition) throw new AssertionError(what);
+    }
+
+    public static void equal(Object expected,Object actual,String what){
+        if(!Objects.equals(expected,actual)){
+            throw new AssertionError(what+"\n  expected: "+expected+"\n  actual:   "+actual);
+        }
+    }
+
+    public static <T extends Throwable> T fails(Class<T> type,Action action,String what){
+        try {
+            action.run();
+        } catch (Throwable t) {
+            if(type.isInstance(t)) return type.cast(t);
+            throw new AssertionError(what+": expected "+type.getName()+" but got "+t,t);
+        }
+        throw new AssertionError(what+": expected "+type.getName());
+    }
+
+    public static void passed(Class<?> test,int cases){
+        System.out.println(test.getSimpleName()+": "+cases+" cases ok");
+    }
+
+    public interface Action {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,60 @@
+package stone;
+
+import stone.ast.ASTree;
+import stone.ch05.GeneratedParser;
+import stone.ch06.Programs;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/** Run from the repository root, or point -Dstone.src at the source directory. */
+public class GeneratedParserTest {
+    public static void main(String[] args) throws Exception{
+        Path checkedIn = Paths.get(System.getProperty("stone.src","src"),"stone/ch05/GeneratedParser.java");
+        String source = new String(Files.readAllBytes(checkedIn),StandardCharsets.UTF_8);
+        Check.equal(ParserGenerator.generate(new BasicPaser().program,GeneratedParser.class.getName()),source,
+                "GeneratedParser.java is out of date; regenerate it with ParserGenerator");
+        int cases = 1;
+
+        BasicPaser bp = new BasicPaser();
+        GeneratedParser gp = new GeneratedParser();
+        Programs programs = new Programs(13);
+        Random r = new Random(13);
+        for(int k = 0;k<3000;k++){
+            String src = programs.next();
+            equal(bp,gp,src);
+            StringBuilder broken = new StringBuilder(src);
+            for(int i = r.nextInt(3);i>=0 && broken.length() > 0;i--){
+                broken.deleteCharAt(r.nextInt(broken.length()));
+            }
+            equal(bp,gp,broken.toString());
+            cases += 2;
+        }
+        Check.passed(GeneratedParserTest.class,cases);
+    }
+
+    private static void equal(BasicPaser bp,GeneratedParser gp,String src){
+        Check.equal(trees(bp::parse,src),trees(gp::parse,src),"generated parser differs from BasicPaser on:\n"+src);
+    }
+
+    private static String trees(Rule rule,String src){
+        StringBuilder sb = new StringBuilder();
+        try {
+            Lexer lexer = new Lexer(src);
+            while (lexer.peek(0) != Token.EOF){
+                ASTree t = rule.parse(lexer);
+                sb.append(t.getClass().getName()).append(' ').append(t).append(' ').append(t.location()).append('\n');
+            }
+        } catch (ParseException e) {
+            sb.append("error: ").append(e.getMessage());
+        }
+        return sb.toString();
+    }
+
+    private interface Rule {
+        ASTree parse(Lexer lexer) throws ParseException;
+    }
+}
@@ -0,0 +1,80 @@
+package stone;
+
+import stone.ast.ASTree;
+
+import java.util.Random;
+
+public class IncrementalParserTest {
+    private static final String[] PIECES = {
+            "x", "y", "1", "42", "\"s\"", " ", "=", "+", "*", "<", "(", ")", "{", "}", ";",
+            "if", "else", "while", "\n", "\n", "\r\n", "// c"
+    };
+
+    public static void main(String[] args) throws Exception{
+        BasicPaser bp = new BasicPaser();
+        Check.equal(full(bp,"x;\n"),incremental(edit(bp,"x;",2,0,"\n")),"a newline appended after a final ';'");
+        Check.equal(full(bp,"x;"),incremental(new IncrementalParser(bp,"x;")),"a final ';' without a newline");
+        Check.equal(full(bp,"x"),incremental(edit(bp,"x;",1,1,"")),"removing a final ';'");
+        int cases = 3;
+
+        Random r = new Random(7);
+        for(int k = 0;k<300;k++){
+            String src = source(r,r.nextInt(30));
+            IncrementalParser session = new IncrementalParser(bp,src);
+            for(int e = 0;e<30;e++){
+                String text = session.text();
+                int offset = r.nextInt(text.length()+1);
+                int length = r.nextInt(Math.min(4,text.length()-offset)+1);
+                String replacement = source(r,r.nextInt(3));
+                session.edit(offset,length,replacement);
+                String edited = text.substring(0,offset)+replacement+text.substring(offset+length);
+                Check.equal(edited,session.text(),"edited text");
+                Check.equal(full(bp,edited),incremental(session),
+                        "edit "+offset+"+"+length+" \""+replacement+"\" of:\n"+text+"\ngiving:\n"+edited);
+                cases++;
+            }
+        }
+        Check.passed(IncrementalParserTest.class,cases);
+    }
+
+    private static IncrementalParser edit(BasicPaser bp,String src,int offset,int length,String replacement){
+        IncrementalParser session = new IncrementalParser(bp,src);
+        session.edit(offset,length,replacement);
+        return session;
+    }
+
+    private static String source(Random r,int pieces){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0;i<pieces;i++){
+            sb.append(PIECES[r.nextInt(PIECES.length)]);
+            if(r.nextBoolean()) sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String full(BasicPaser bp,String text){
+        StringBuilder sb = new StringBuilder();
+        try {
+            Lexer lexer = new Lexer(text);
+            while (lexer.peek(0) != Token.EOF){
+                append(sb,bp.parse(lexer));
+            }
+        } catch (ParseException e) {
+            sb.append("error: ").append(e.getMessage());
+        }
+        return sb.toString();
+    }
+
+    private static String incremental(IncrementalParser session){
+        StringBuilder sb = new StringBuilder();
+        for(ASTree t:session.trees()){
+            append(sb,t);
+        }
+        if(session.error() != null) sb.append("error: ").append(session.error().getMessage());
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb,ASTree t){
+        sb.append(t.getClass().getSimpleName()).append(' ').append(t).append(' ').append(t.location()).append('\n');
+    }
+}
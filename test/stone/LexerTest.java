@@ -0,0 +1,52 @@
+package stone;
+
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class LexerTest {
+    private static final String[] PIECES = {
+            "x", "y1", "_a", "while", "if", "else", "0", "42", "2147483647",
+            "\"s\"", "\"a\\\"b\"", "\"\\\\\"", "\"x\\ny\"", "\"\"",
+            "=", "==", "<", "<=", ">", ">=", "&&", "||", "+", "-", "*", "/", "%",
+            "(", ")", "{", "}", ";", "!", "// note", " ", "  ", "\t", "\n", "\n", "\r\n", "\r"
+    };
+
+    public static void main(String[] args) throws Exception{
+        Random r = new Random(1);
+        int n = 0;
+        for(;n<3000;n++){
+            String src = source(r);
+            String expected = tokens(new Lexer(new StringReader(src),true));
+            equal(expected,tokens(new Lexer(new StringReader(src))),"scanner",src);
+            equal(expected,tokens(new Lexer(src)),"buffer lexer",src);
+            equal(expected,tokens(TokenBuffer.of(src).lexer()),"token buffer",src);
+            equal(expected,tokens(ParallelLexer.lex(src,8,ForkJoinPool.commonPool()).lexer()),"parallel lexer",src);
+        }
+        Check.fails(ParseException.class,() -> tokens(new Lexer(new StringReader("x = 1 \u00e9 2"))),"illegal character");
+        Check.passed(LexerTest.class,n+1);
+    }
+
+    private static String source(Random r){
+        StringBuilder sb = new StringBuilder();
+        for(int i = r.nextInt(40);i>0;i--){
+            String piece = PIECES[r.nextInt(PIECES.length)];
+            sb.append(piece);
+            if(Character.isDigit(piece.charAt(0)) || r.nextBoolean()) sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static void equal(String expected,String actual,String lexer,String src){
+        Check.equal(expected,actual,lexer+" differs from the regex lexer on:\n"+src);
+    }
+
+    private static String tokens(Lexer lexer) throws ParseException{
+        StringBuilder sb = new StringBuilder();
+        for(Token t = lexer.read();t != Token.EOF;t = lexer.read()){
+            char kind = t.isNumber() ? 'n' : t.isString() ? 's' : t.isIdF() ? 'i' : '?';
+            sb.append(t.getLineNumber()).append(kind).append('[').append(t.getText()).append("] ");
+        }
+        return sb.toString();
+    }
+}
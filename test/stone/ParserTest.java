@@ -0,0 +1,76 @@
+package stone;
+
+import stone.ast.ASTree;
+import stone.ast.BinaryExpr;
+import stone.ast.Name;
+import stone.ast.NumberLiteral;
+import stone.ast.StringLiteral;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static stone.Parser.rule;
+
+public class ParserTest {
+    public static void main(String[] args) throws Exception{
+        Parser overlap = rule().or(rule().sep("a").number(),rule().sep("a","b").number());
+        List<String> conflicts = overlap.build();
+        Check.equal(1,conflicts.size(),"overlapping alternatives are reported");
+        Check.check(conflicts.get(0).contains("\"a\""),"the conflict names the shared token: "+conflicts);
+        Check.equal(4,new BasicPaser().conflicts().size(),"the Stone grammar only has its ordered-choice overlaps");
+
+        Parser shadowed = rule().or(rule().number(NumberLiteral.class),rule().number(NumberLiteral.class));
+        Check.fails(CopyStoneException.class,shadowed::build,"build() rejects a shadowed alternative");
+        Parser lazy = rule().or(rule().number(NumberLiteral.class),rule().number(NumberLiteral.class));
+        Check.equal("12",lazy.parse(new Lexer("12")).toString(),"parsing never rejects a shadowed alternative");
+
+        BasicPaser a = new BasicPaser();
+        Parser.OrTree statement = (Parser.OrTree)a.program.elements.get(0);
+        a.parse(new Lexer("x = 1\n"));
+        Parser.Dispatch built = statement.dispatch;
+        BasicPaser b = new BasicPaser();
+        b.reserved.add("x");
+        b.statement0.insertChoice(rule().sep("print").string(StringLiteral.class));
+        a.parse(new Lexer("x = 1\n"));
+        Check.check(statement.dispatch == built,"editing another grammar keeps this grammar's tables");
+        Check.fails(ParseException.class,() -> b.parse(new Lexer("x = 1\n")),"the edited grammar sees its new reserved word");
+        Check.equal("hi",b.parse(new Lexer("print \"hi\"\n")).toString(),"the edited grammar sees its new choice");
+
+        a.reserved.add("x");
+        Check.fails(ParseException.class,() -> a.parse(new Lexer("x = 1\n")),"a reserved word edit rebuilds the table");
+        Check.check(statement.dispatch != built,"the stale table was replaced");
+
+        Parser choice = rule().or(rule().number(NumberLiteral.class));
+        Check.fails(ParseException.class,() -> choice.parse(new Lexer("\"s\"")),"no string alternative yet");
+        choice.insertChoice(rule().string(StringLiteral.class));
+        ASTree s = choice.parse(new Lexer("\"s\""));
+        Check.check(s instanceof StringLiteral,"insertChoice rebuilds the table: "+s);
+
+        BasicPaser frozen = new BasicPaser().freeze();
+        Check.fails(IllegalStateException.class,() -> frozen.reserved.add("y"),"a frozen grammar cannot be edited");
+        Check.equal("(y = 1)",frozen.parse(new Lexer("y = 1\n")).toString(),"a frozen grammar still parses");
+
+        HashSet<String> words = new HashSet<>();
+        words.add(Token.EOL);
+        Parser.Operators ops = new Parser.Operators();
+        ops.add("+",1,Parser.Operators.LEFT);
+        Parser value = rule().or(rule().number(NumberLiteral.class),rule().idF(Name.class,words));
+        Parser sum = rule().expression(BinaryExpr.class,value,ops);
+        Parser line = rule().or(rule().sep("(").ast(sum).sep(")"),rule().ast(sum)).sep(Token.EOL);
+        TokenBuffer tokens = TokenBuffer.of("a + 1\n(b + c + 2)\n3\n");
+        PackratLexer packrat = new PackratLexer(tokens);
+        Check.equal(lines(line,tokens.lexer()),lines(line,packrat),"packrat parses like the plain cursor");
+        Check.check(packrat.hits() > 0,"nested match probes are memoized: "+packrat.hits());
+        packrat.clear();
+        Check.equal(0,packrat.hits()+packrat.misses(),"clear resets the counters");
+        Check.passed(ParserTest.class,17);
+    }
+
+    private static String lines(Parser line,Lexer lexer) throws ParseException{
+        StringBuilder sb = new StringBuilder();
+        while (lexer.peek(0) != Token.EOF){
+            sb.append(line.parse(lexer)).append('|');
+        }
+        return sb.toString();
+    }
+}
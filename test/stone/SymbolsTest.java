@@ -0,0 +1,45 @@
+package stone;
+
+import stone.ast.ASTree;
+import stone.ast.FlatTree;
+
+import java.io.StringReader;
+
+public class SymbolsTest {
+    public static void main(String[] args) throws Exception{
+        BasicPaser bp = new BasicPaser();
+        int old = Symbols.limit();
+        Symbols.setLimit(Symbols.size()+3);
+        try {
+            StringBuilder src = new StringBuilder();
+            for(int i = 0;i<20;i++){
+                src.append("fresh").append(i).append(" = fresh").append(i).append(" + 1\n");
+            }
+            String expected = text(new Lexer(new StringReader(src.toString()),true));
+            Check.equal(expected,text(new Lexer(new StringReader(src.toString()))),"scanner");
+            Check.equal(expected,text(new Lexer(src)),"buffer lexer");
+            Check.equal(expected,text(TokenBuffer.of(src).lexer()),"token buffer");
+            Check.check(expected.contains("fresh19"),"identifiers past the limit keep their text");
+            Check.check(Symbols.size() <= Symbols.limit(),"the lexer never grows the table past the limit");
+
+            FlatTree flat = FlatTree.parse(bp,new Lexer(src));
+            ASTree tree = bp.parse(new Lexer("fresh19 = fresh19 + 1\n"));
+            Check.equal(tree.toString(),flat.view(flat.statement(19)).toString(),"flat tree keeps names past the limit");
+            Check.equal("fresh19",flat.name(flat.child(flat.statement(19),0)),"flat tree name");
+
+            int grammar = Symbols.intern("grammarWordPastLimit");
+            Check.check(grammar >= 0 && Symbols.name(grammar).equals("grammarWordPastLimit"),"grammar words are always interned");
+        } finally {
+            Symbols.setLimit(old);
+        }
+        Check.passed(SymbolsTest.class,6);
+    }
+
+    private static String text(Lexer lexer) throws ParseException{
+        StringBuilder sb = new StringBuilder();
+        for(Token t = lexer.read();t != Token.EOF;t = lexer.read()){
+            sb.append(t.getText()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package stone.ch06;
+
+import javassist.gluonj.util.Loader;
+import stone.Check;
+import stone.Lexer;
+import stone.StoneException;
+import stone.ast.ASTree;
+import stone.ast.FlatTree;
+
+public class EvaluatorTest {
+    private static final String[][] CASES = {
+            {"if 1 { 1; \"a\" }", "a"},
+            {"if 1 { \"a\"; 1 }", "1"},
+            {"x = \"s\"\nif 1 { x } else { 2 }", "s,s"},
+            {"i = 0\nwhile i < 2 { i = i + 1; \"w\" + i }", "0,w2"},
+            {"if \"s\" { 1 } else { 2 }", "2"},
+            {"-\"s\"", "bad type for - at line 1"},
+            {"1 + \"a\"", "1a"},
+            {"\"a\" == \"a\"", "1"},
+            {"2147483647 + 1", "-2147483648"},
+            {"x = 1\nx = x + \"b\"\nx", "1,1b,1b"},
+            {"1 / 0", "java.lang.ArithmeticException"},
+            {"z + 1", "undefined name: z at line 1"},
+    };
+
+    public static void main(String[] args) throws Throwable{
+        if(EvaluatorTest.class.getClassLoader() == ClassLoader.getSystemClassLoader()){
+            Loader.run(EvaluatorTest.class,args,BasicEvaluator.class);
+            return;
+        }
+        int threshold = LoopTier.threshold();
+        LoopTier.setThreshold(-1);
+        int cases = 0;
+        try {
+            for(String[] c:CASES){
+                Check.equal(c[1],tree(c[0],new BasicEnv()),c[0]);
+                cases++;
+            }
+            cases += specializations();
+            Programs programs = new Programs(21);
+            for(int k = 0;k<3000;k++){
+                String src = programs.next();
+                if(Programs.parse(src) == null) continue;
+                String expected = tree(src,new BasicEnv());
+                Check.equal(expected,tree(src,new ArrayEnv()),"resolved ArrayEnv\n"+src);
+                Check.equal(expected,flat(src),"flat evaluator\n"+src);
+                cases++;
+            }
+        } finally {
+            LoopTier.setThreshold(threshold);
+        }
+        Check.passed(EvaluatorTest.class,cases);
+    }
+
+    /** A node specializes on the operands it first sees and falls back to generic, for good, on a mismatch. */
+    private static int specializations(){
+        Environment env = new BasicEnv();
+        BasicEvaluator.BinaryEx add = binary("x + 1");
+        env.put("x",1);
+        Check.equal(2,add.eval(env),"int add");
+        Check.equal(BasicEvaluator.BinaryEx.INT,add.specialized,"int operands specialize to INT");
+        env.put("x","a");
+        Check.equal("a1",add.eval(env),"a string reaching an int node");
+        Check.equal(BasicEvaluator.BinaryEx.GENERIC,add.specialized,"a mismatch falls back to GENERIC");
+        env.put("x",2);
+        Check.equal(3,add.eval(env),"ints again on a generic node");
+        Check.equal(BasicEvaluator.BinaryEx.GENERIC,add.specialized,"GENERIC is final");
+
+        BasicEvaluator.BinaryEx concat = binary("x + y");
+        env.put("y",1);
+        Check.equal(3,concat.eval(env),"int operands");
+        env.put("x","s");
+        Check.equal("s1",concat.eval(env),"then a string");
+        Check.equal(BasicEvaluator.BinaryEx.GENERIC,concat.specialized,"int operands first, then a string");
+        BasicEvaluator.BinaryEx s = binary("x + y");
+        Check.equal("s1",s.eval(env),"concat first");
+        Check.equal(BasicEvaluator.BinaryEx.CONCAT,s.specialized,"a string operand to + specializes to CONCAT");
+        Check.fails(NonIntValue.class,() -> s.evalInt(env),"a concat node reached through evalInt");
+        env.put("x",4);
+        Check.equal(5,s.evalInt(env),"ints reaching a concat node through evalInt");
+        Check.equal(BasicEvaluator.BinaryEx.GENERIC,s.specialized,"CONCAT falls back to GENERIC");
+
+        BasicEvaluator.BinaryEx sub = binary("x - 1");
+        Check.equal(3,sub.evalInt(env),"evalInt specializes too");
+        Check.equal(BasicEvaluator.BinaryEx.INT,sub.specialized,"INT through evalInt");
+        env.put("x","a");
+        Check.fails(StoneException.class,() -> sub.eval(env),"a string reaching an int subtraction");
+        Check.equal(BasicEvaluator.BinaryEx.GENERIC,sub.specialized,"and falls back");
+        return 18;
+    }
+
+    private static BasicEvaluator.BinaryEx binary(String src){
+        return (BasicEvaluator.BinaryEx)Programs.parse(src+"\n").get(0);
+    }
+
+    static String tree(String src,Environment env){
+        StringBuilder sb = new StringBuilder();
+        for(ASTree t:Programs.parse(src)){
+            if(env instanceof ArrayEnv) Resolver.resolve(t,(ArrayEnv)env);
+            if(sb.length() > 0) sb.append(',');
+            sb.append(Programs.outcome(() -> ((BasicEvaluator.ASTreeEx)t).eval(env)));
+        }
+        return sb.toString();
+    }
+
+    static String flat(String src) throws Exception{
+        FlatTree flat = FlatTree.parse(new stone.BasicPaser(),new Lexer(src));
+        FlatEvaluator evaluator = new FlatEvaluator(flat);
+        Environment env = new BasicEnv();
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0;i<flat.statements();i++){
+            int node = flat.statement(i);
+            if(flat.kind(node) == FlatTree.NULL) continue;
+            if(sb.length() > 0) sb.append(',');
+            sb.append(Programs.outcome(() -> evaluator.eval(node,env)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package stone.ch06;
+
+import javassist.gluonj.util.Loader;
+import stone.Check;
+import stone.StoneException;
+import stone.ast.ASTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class NameCacheTest {
+    public static void main(String[] args) throws Throwable{
+        if(NameCacheTest.class.getClassLoader() == ClassLoader.getSystemClassLoader()){
+            Loader.run(NameCacheTest.class,args,BasicEvaluator.class);
+            return;
+        }
+        int threshold = LoopTier.threshold();
+        LoopTier.setThreshold(-1);
+        try {
+            ASTree read = Programs.parse("x\n").get(0);
+            ASTree bump = Programs.parse("x = x + 1\n").get(0);
+            BasicEnv b1 = new BasicEnv(), b2 = new BasicEnv();
+            ArrayEnv a1 = new ArrayEnv(), a2 = new ArrayEnv();
+            a2.slot("pad");
+            Environment[] envs = {b1, a1, b2, a2};
+            for(int i = 0;i<envs.length;i++) envs[i].put("x",i*10);
+            for(int round = 1;round<=3;round++){
+                for(int i = 0;i<envs.length;i++){
+                    eval(bump,envs[i]);
+                    Check.equal(i*10+round,eval(read,envs[i]),"switching environments, env "+i+" round "+round);
+                }
+            }
+
+            eval(read,b1);
+            Check.equal(b1,((BasicEvaluator.NameEx)read).binding.env,"a BasicEnv is cached");
+            b1.put("x","s");
+            Check.equal("s",eval(read,b1),"a cached BasicEnv cell sees later puts");
+            eval(bump,b1);
+            Check.equal("s1",b1.get("x"),"an assignment through the cell is seen by get");
+
+            ASTree missing = Programs.parse("z\n").get(0);
+            BasicEnv empty = new BasicEnv();
+            Check.fails(StoneException.class,() -> eval(missing,empty),"an undefined name fails");
+            Check.fails(StoneException.class,() -> eval(missing,empty),"and still fails once its cell is cached");
+            empty.put("z",3);
+            Check.equal(3,eval(missing,empty),"a cached empty cell picks up a later definition");
+
+            Upper upper = new Upper();
+            upper.put("x","a");
+            eval(bump,upper);
+            Check.equal("A1",eval(read,upper),"a subclass's get and put are not bypassed");
+            Check.equal(2,upper.calls,"both overrides ran");
+
+            Check.equal(5,run(bump,read,new ArrayEnv(),5),"ArrayEnv after many switches");
+            Check.equal(5,run(bump,read,new BasicEnv(),5),"BasicEnv after many switches");
+        } finally {
+            LoopTier.setThreshold(threshold);
+        }
+        Check.passed(NameCacheTest.class,13+threads());
+    }
+
+    /** Threads share the trees but not the environments; each must only ever see its own. */
+    private static int threads() throws Exception{
+        List<ASTree> program = Programs.parse("x = x + 1\nx\n");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int k = 0;k<8;k++){
+                final int t = k;
+                results.add(pool.submit(() -> {
+                    Environment env = t%2 == 0 ? new BasicEnv() : new ArrayEnv();
+                    for(int p = 0;p<t;p++) if(env instanceof ArrayEnv) ((ArrayEnv)env).slot("pad"+p);
+                    return run(program.get(0),program.get(1),env,20000);
+                }));
+            }
+            for(Future<Integer> f:results){
+                Check.equal(20000,f.get(),"threads sharing trees keep their own values");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return 8;
+    }
+
+    private static int run(ASTree bump,ASTree read,Environment env,int times){
+        env.put("x",0);
+        for(int i = 0;i<times;i++){
+            eval(bump,env);
+            Environment other = new BasicEnv();
+            other.put("x",-1);
+            eval(read,other);
+        }
+        return (Integer)eval(read,env);
+    }
+
+    /** Upper-cases strings on the way out; the name cache must leave that to it. */
+    private static class Upper extends BasicEnv {
+        int calls;
+
+        @Override
+        public void put(String name,Object value){
+            calls++;
+            super.put(name,value);
+        }
+
+        @Override
+        public Object get(String name){
+            Object v = super.get(name);
+            return v instanceof String ? ((String)v).toUpperCase() : v;
+        }
+    }
+
+    private static Object eval(ASTree t,Environment env){
+        return ((BasicEvaluator.ASTreeEx)t).eval(env);
+    }
+}
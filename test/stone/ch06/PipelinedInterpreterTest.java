@@ -0,0 +1,79 @@
+package stone.ch06;
+
+import javassist.gluonj.util.Loader;
+import stone.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PipelinedInterpreterTest {
+    public static void main(String[] args) throws Throwable{
+        if(PipelinedInterpreterTest.class.getClassLoader() == ClassLoader.getSystemClassLoader()){
+            Loader.run(PipelinedInterpreterTest.class,args,BasicEvaluator.class);
+            return;
+        }
+        ClosingReader reader = new ClosingReader("x = 1\ny = x + 2\ny * 2\n");
+        Check.equal("=> 1\n=> 3\n=> 6\n",output(new Lexer(reader)),"statements are evaluated in order");
+        Check.check(reader.closed,"the reader is closed at the end of input");
+
+        reader = new ClosingReader("x = 1\ny = (x\n");
+        final Lexer syntax = new Lexer(reader);
+        Check.fails(ParseException.class,() -> output(syntax),"a syntax error reaches the caller");
+        Check.check(reader.closed,"the reader is closed after a syntax error");
+
+        reader = new ClosingReader("x = 1\ny = 2\n");
+        final Lexer broken = new Lexer(reader){
+            private int reads;
+            @Override
+            public Token read() throws ParseException{
+                if(++reads > 4) throw new AssertionError("lexer bug");
+                return super.read();
+            }
+        };
+        AssertionError e = Check.fails(AssertionError.class,() -> output(broken),"an Error in the producer reaches the caller");
+        Check.equal("lexer bug",e.getMessage(),"the producer's Error is forwarded");
+        Check.check(reader.closed,"the reader is closed after an Error");
+        Check.passed(PipelinedInterpreterTest.class,7);
+    }
+
+    private static String output(Lexer lexer) throws Exception{
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(bytes,true));
+        Thread consumer = new Thread(() -> {
+            try {
+                PipelinedInterpreter.run(new BasicPaser(),new ArrayEnv(),lexer,2);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        try {
+            consumer.start();
+            consumer.join(10000);
+        } finally {
+            System.setOut(out);
+        }
+        Check.check(!consumer.isAlive(),"the interpreter finished instead of waiting for the producer");
+        Throwable t = failure.get();
+        if(t instanceof Exception) throw (Exception)t;
+        if(t instanceof Error) throw (Error)t;
+        return bytes.toString().replace("\r\n","\n");
+    }
+
+    private static class ClosingReader extends StringReader{
+        private volatile boolean closed;
+
+        ClosingReader(String s){
+            super(s);
+        }
+
+        @Override
+        public void close(){
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package stone.ch06;
+
+import stone.*;
+import stone.ast.ASTree;
+import stone.ast.NullStmnt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Random Stone programs mixing ints and strings, for comparing evaluators. */
+public class Programs {
+    private static final String[] ATOMS = {"1", "0", "2", "7", "\"a\"", "\"\"", "x", "y", "(3)", "-4", "-\"s\""};
+    private static final String[] OPS = {"+", "-", "*", "/", "%", "==", "<", ">", "<="};
+    private final Random random;
+
+    public Programs(long seed){
+        random = new Random(seed);
+    }
+
+    public String next(){
+        return "x = 1\ny = 2\n"+block(2)+"\n";
+    }
+
+    private String expr(int d){
+        if(d == 0 || random.nextInt(3) == 0) return ATOMS[random.nextInt(ATOMS.length)];
+        switch (random.nextInt(4)){
+            case 0: return "-("+expr(d-1)+")";
+            case 1: return "("+expr(d-1)+")";
+            default: return expr(d-1)+" "+OPS[random.nextInt(OPS.length)]+" "+expr(d-1);
+        }
+    }
+
+    private String statement(int d){
+        switch (random.nextInt(d > 0 ? 7 : 3)){
+            case 0: return "x = "+expr(3);
+            case 1: return "y = "+expr(3);
+            case 2: return expr(3);
+            case 3: return "if "+expr(2)+" { "+block(d-1)+" }"+(random.nextBoolean() ? " else { "+block(d-1)+" }" : "");
+            case 4: return "i = 0\nwhile i < 3 { i = i + 1; "+block(d-1)+" }";
+            case 5: return "while "+(random.nextBoolean() ? "0" : "1 - 1")+" { "+block(d-1)+" }";
+            default: return "if 1 { "+block(d-1)+" }";
+        }
+    }
+
+    private String block(int d){
+        StringBuilder sb = new StringBuilder();
+        int n = random.nextInt(4);
+        for(int i = 0;i<n;i++){
+            if(i > 0) sb.append(random.nextBoolean() ? "; " : "\n");
+            sb.append(statement(d));
+        }
+        return sb.toString();
+    }
+
+    /** The statements of a program, or null if it does not parse. */
+    public static List<ASTree> parse(String src){
+        BasicPaser bp = new BasicPaser();
+        ArrayList<ASTree> statements = new ArrayList<>();
+        try {
+            Lexer l = new Lexer(src);
+            while (l.peek(0) != Token.EOF){
+                ASTree t = bp.parse(l);
+                if(!(t instanceof NullStmnt)) statements.add(t);
+            }
+        } catch (ParseException e) {
+            return null;
+        }
+        return statements;
+    }
+
+    /** Stone errors compare by message; JVM exceptions by class, since hot ones lose their message. */
+    public static String outcome(Evaluation e){
+        try {
+            return String.valueOf(e.run());
+        } catch (StoneException ex) {
+            return ex.getMessage();
+        } catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    public interface Evaluation {
+        Object run();
+    }
+}
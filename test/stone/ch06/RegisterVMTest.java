@@ -0,0 +1,72 @@
+package stone.ch06;
+
+import javassist.gluonj.util.Loader;
+import stone.Check;
+import stone.ast.ASTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RegisterVMTest {
+    public static void main(String[] args) throws Throwable{
+        if(RegisterVMTest.class.getClassLoader() == ClassLoader.getSystemClassLoader()){
+            Loader.run(RegisterVMTest.class,args,BasicEvaluator.class);
+            return;
+        }
+        int threshold = LoopTier.threshold();
+        LoopTier.setThreshold(-1);
+        int cases = 0;
+        try {
+            RegisterCode code = RegisterCode.compile(Programs.parse("x = 1\n"));
+            RegisterVM vm = new RegisterVM(code);
+            Environment env = new ArrayEnv();
+            Check.equal(1,vm.eval(0,env),"first statement");
+            int deep = code.add(Programs.parse("y = ((x + 1) * (x + 2)) - ((x + 3) * (x + 4))\n").get(0));
+            Check.equal(-14,vm.eval(deep,env),"a statement added later needs more registers");
+            Check.equal(-14,env.get("y"),"and a new global");
+            int again = code.add(Programs.parse("x + y\n").get(0));
+            Check.equal(-13,vm.eval(again,env),"a statement added after running");
+            RegisterCode empty = RegisterCode.compile(Collections.<ASTree>emptyList());
+            int first = empty.add(Programs.parse("\"s\" + 1\n").get(0));
+            Check.equal("s1",new RegisterVM(empty).eval(first,new BasicEnv()),"an empty program can grow");
+            cases += 5;
+
+            Programs programs = new Programs(23);
+            for(int k = 0;k<3000;k++){
+                List<ASTree> statements = Programs.parse(programs.next());
+                if(statements == null) continue;
+                List<ASTree> optimized = new ArrayList<>();
+                for(ASTree t:statements){
+                    optimized.add(Optimizer.optimize(t));
+                }
+                String expected = walk(statements);
+                Check.equal(expected,run(statements,new ArrayEnv()),"register VM on ArrayEnv\n"+statements);
+                Check.equal(expected,run(optimized,new BasicEnv()),"register VM on optimized trees\n"+statements);
+                cases++;
+            }
+        } finally {
+            LoopTier.setThreshold(threshold);
+        }
+        Check.passed(RegisterVMTest.class,cases);
+    }
+
+    private static String walk(List<ASTree> statements){
+        Environment env = new BasicEnv();
+        StringBuilder sb = new StringBuilder();
+        for(ASTree t:statements){
+            sb.append(Programs.outcome(() -> ((BasicEvaluator.ASTreeEx)t).eval(env))).append(',');
+        }
+        return sb.toString();
+    }
+
+    private static String run(List<ASTree> statements,Environment env){
+        RegisterVM vm = new RegisterVM(RegisterCode.compile(statements));
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0;i<statements.size();i++){
+            int statement = i;
+            sb.append(Programs.outcome(() -> vm.eval(statement,env))).append(',');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package stone.ch06;
+
+import javassist.CtClass;
+import javassist.gluonj.util.Loader;
+import stone.Check;
+import stone.ast.ASTree;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class StoneCompilerTest {
+    public static void main(String[] args) throws Throwable{
+        if(StoneCompilerTest.class.getClassLoader() == ClassLoader.getSystemClassLoader()){
+            Loader.run(StoneCompilerTest.class,args,BasicEvaluator.class);
+            return;
+        }
+        int threshold = LoopTier.threshold();
+        LoopTier.setThreshold(-1);
+        int cases = 0;
+        try {
+            CompiledProgram two = StoneCompiler.define(StoneCompiler.compile(Programs.parse("x = 6\nx * 7\n"),StoneCompiler.DEFAULT_NAME));
+            Check.equal(2,two.statements(),"statement count");
+            Check.fails(IndexOutOfBoundsException.class,() -> two.eval(2,new BasicEnv()),"a statement past the end");
+            Check.fails(IndexOutOfBoundsException.class,() -> two.eval(-1,new BasicEnv()),"a negative statement");
+
+            Path dir = Files.createTempDirectory("stonec");
+            try {
+                CtClass ct = StoneCompiler.compile(Programs.parse("1\n"),StoneCompiler.DEFAULT_NAME);
+                byte[] code = Files.readAllBytes(StoneCompiler.write(ct,dir));
+                Check.equal(0xcafebabe,(code[0]&0xff)<<24 | (code[1]&0xff)<<16 | (code[2]&0xff)<<8 | code[3]&0xff,"write() emits a class file");
+            } finally {
+                try (Stream<Path> s = Files.walk(dir)){
+                    s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+            cases += 4;
+
+            Programs programs = new Programs(22);
+            for(int k = 0;k<2000;k++){
+                String src = programs.next();
+                List<ASTree> statements = Programs.parse(src);
+                if(statements == null) continue;
+                String expected = EvaluatorTest.tree(src,new BasicEnv());
+                List<ASTree> optimized = new ArrayList<>();
+                for(ASTree t:Programs.parse(src)){
+                    optimized.add(Optimizer.optimize(t));
+                }
+                Check.equal(expected,run(statements,new BasicEnv()),"compiled program on BasicEnv\n"+src);
+                Check.equal(expected,run(statements,new ArrayEnv()),"compiled program on ArrayEnv\n"+src);
+                Check.equal(expected,run(optimized,new ArrayEnv()),"compiled optimized program\n"+src);
+                cases++;
+            }
+        } finally {
+            LoopTier.setThreshold(threshold);
+        }
+        Check.passed(StoneCompilerTest.class,cases);
+    }
+
+    /** Every program reuses one class name, so this also checks that define() frees it. */
+    private static String run(List<ASTree> statements,Environment env){
+        CompiledProgram program = StoneCompiler.define(StoneCompiler.compile(statements,StoneCompiler.DEFAULT_NAME));
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0;i<program.statements();i++){
+            int statement = i;
+            if(sb.length() > 0) sb.append(',');
+            sb.append(Programs.outcome(() -> program.eval(statement,env)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,56 @@
+package stone.ch06;
+
+import javassist.gluonj.util.Loader;
+import stone.Check;
+
+public class TierTest {
+    private static final int[] THRESHOLDS = {0, 1, 2};
+    private static final String DEOPT =
+            "x = 0\nj = 0\nwhile j < 3 { i = 0; while i < 5 { i = i + 1; x = x + 1 }; x = \"s\" + x; j = j + 1 }\nx\n";
+    private static final String[] CASES = {
+            DEOPT,
+            "i = 0\nx = 0\nwhile i < 5 { i = i + 1; x = 10 / (3 - i) }\ni\nx\n",
+            "i = 0\nwhile i < 4 { i = i + 1; j = 0; while j < i { j = j + 1 } }\ni + j\n",
+            "i = 0\nwhile i < 3 { i = i + 1 }\nwhile i > 0 { i = i - 1; if i == 1 { i = \"s\" } }\ni\n",
+    };
+
+    public static void main(String[] args) throws Throwable{
+        if(TierTest.class.getClassLoader() == ClassLoader.getSystemClassLoader()){
+            Loader.run(TierTest.class,args,BasicEvaluator.class);
+            return;
+        }
+        int threshold = LoopTier.threshold();
+        int cases = 0;
+        try {
+            for(String src:CASES){
+                compare(src);
+                cases++;
+            }
+            int deopts = LoopTier.deopts();
+            compare(DEOPT);
+            Check.check(LoopTier.deopts() > deopts,"a compiled loop entered with a string deoptimizes");
+            cases++;
+
+            Programs programs = new Programs(25);
+            for(int k = 0;k<2000;k++){
+                String src = programs.next();
+                if(Programs.parse(src) == null) continue;
+                compare(src);
+                cases++;
+            }
+        } finally {
+            LoopTier.setThreshold(threshold);
+        }
+        Check.passed(TierTest.class,cases);
+    }
+
+    private static void compare(String src){
+        LoopTier.setThreshold(-1);
+        String expected = EvaluatorTest.tree(src,new BasicEnv());
+        for(int t:THRESHOLDS){
+            LoopTier.setThreshold(t);
+            Check.equal(expected,EvaluatorTest.tree(src,new BasicEnv()),"threshold "+t+" on BasicEnv\n"+src);
+            Check.equal(expected,EvaluatorTest.tree(src,new ArrayEnv()),"threshold "+t+" on ArrayEnv\n"+src);
+        }
+    }
+}